@@ -0,0 +1,48 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Helper for measuring how many bytes the calling thread has allocated on the heap. Take the
+ * difference between two readings around a section of code to get the garbage that section
+ * generates.
+ */
+public final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean k_threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final boolean k_supported;
+
+    static {
+        boolean supported = k_threadBean.isThreadAllocatedMemorySupported();
+        if (supported && !k_threadBean.isThreadAllocatedMemoryEnabled()) {
+            k_threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        k_supported = supported && k_threadBean.isThreadAllocatedMemoryEnabled();
+    }
+
+    private AllocationMeter() {}
+
+    /**
+     * Whether the JVM supports per thread allocation accounting. If it doesn't, all readings will
+     * be zero.
+     *
+     * @return true if allocation readings are valid
+     */
+    public static boolean isSupported() {
+        return k_supported;
+    }
+
+    /**
+     * Gets the total number of bytes the calling thread has allocated since it started. Does not
+     * allocate itself.
+     *
+     * @return total bytes allocated by the current thread, or zero if unsupported
+     */
+    public static long getCurrentThreadAllocatedBytes() {
+        return k_supported ? k_threadBean.getCurrentThreadAllocatedBytes() : 0;
+    }
+}
@@ -0,0 +1,128 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import org.growingstems.measurements.Measurements.Current;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.Timestamped;
+
+/**
+ * Incremental detector for sustained current spikes, such as a roller loading up when a game piece
+ * enters it. Tracks a slow moving baseline of the current while no spike is present and reports an
+ * edge once the current has stayed above or below the baseline by the threshold for the debounce
+ * time. Samples are processed one at a time in constant time and memory, and a sample is ignored if
+ * its timestamp is not newer than the last one, so it can be fed faster than the signal updates.
+ */
+public class CurrentSpikeDetector {
+    /** Edge reported by {@link CurrentSpikeDetector#update(Timestamped)}. */
+    public enum Edge {
+        /** No change in spike state. */
+        NONE,
+        /** The current rose above the baseline and stayed there, i.e. a game piece entered. */
+        RISING,
+        /** The current fell back to the baseline and stayed there, i.e. a game piece left. */
+        FALLING
+    }
+
+    private final double m_threshold_A;
+    private final double m_releaseThreshold_A;
+    private final double m_debounce_s;
+    private final double m_baselineTimeConstant_s;
+
+    private double m_baseline_A = Double.NaN;
+    private double m_lastTimestamp_s = Double.NEGATIVE_INFINITY;
+    private double m_candidateStart_s = Double.NaN;
+    private boolean m_inSpike = false;
+
+    /**
+     * Creates a detector.
+     *
+     * @param threshold How far above the baseline the current has to be to count as a spike
+     * @param releaseThreshold How far above the baseline the current has to fall under for a spike
+     *     to end. Should be lower than threshold to provide hysteresis.
+     * @param debounce How long the current has to stay past a threshold before an edge is reported
+     * @param baselineTimeConstant Time constant of the baseline filter. Should be much longer than
+     *     a spike.
+     */
+    public CurrentSpikeDetector(
+            Current threshold, Current releaseThreshold, Time debounce, Time baselineTimeConstant) {
+        m_threshold_A = threshold.asAmps();
+        m_releaseThreshold_A = releaseThreshold.asAmps();
+        m_debounce_s = debounce.asSeconds();
+        m_baselineTimeConstant_s = baselineTimeConstant.asSeconds();
+    }
+
+    /**
+     * Processes a new current sample.
+     *
+     * @param sample The current sample, timestamped with when it was measured
+     * @return The edge detected by this sample, if any
+     */
+    public Edge update(Timestamped<Current> sample) {
+        return update(sample.getData().asAmps(), sample.getTimestamp().asSeconds());
+    }
+
+    /**
+     * Processes a new current sample without allocating, i.e. straight from a HAL's signal.
+     *
+     * @param current_A The current in amps
+     * @param timestamp_s When the current was measured in seconds
+     * @return The edge detected by this sample, if any
+     */
+    public Edge update(double current_A, double timestamp_s) {
+        if (timestamp_s <= m_lastTimestamp_s) {
+            return Edge.NONE;
+        }
+
+        double dt_s = timestamp_s - m_lastTimestamp_s;
+        m_lastTimestamp_s = timestamp_s;
+
+        if (Double.isNaN(m_baseline_A)) {
+            m_baseline_A = current_A;
+            return Edge.NONE;
+        }
+
+        double aboveBaseline_A = current_A - m_baseline_A;
+        boolean pastThreshold =
+                m_inSpike ? aboveBaseline_A < m_releaseThreshold_A : aboveBaseline_A > m_threshold_A;
+
+        if (!pastThreshold) {
+            m_candidateStart_s = Double.NaN;
+            if (!m_inSpike) {
+                // Only track the baseline while not spiking, otherwise it would chase the spike
+                double alpha = dt_s / (m_baselineTimeConstant_s + dt_s);
+                m_baseline_A += alpha * (current_A - m_baseline_A);
+            }
+            return Edge.NONE;
+        }
+
+        if (Double.isNaN(m_candidateStart_s)) {
+            m_candidateStart_s = timestamp_s;
+        }
+        if (timestamp_s - m_candidateStart_s < m_debounce_s) {
+            return Edge.NONE;
+        }
+
+        m_candidateStart_s = Double.NaN;
+        m_inSpike = !m_inSpike;
+        return m_inSpike ? Edge.RISING : Edge.FALLING;
+    }
+
+    /**
+     * Whether the detector is currently reporting a spike.
+     *
+     * @return true between a rising and falling edge
+     */
+    public boolean isInSpike() {
+        return m_inSpike;
+    }
+
+    /** Clears the baseline and spike state, i.e. after the motor has been stopped. */
+    public void reset() {
+        m_baseline_A = Double.NaN;
+        m_candidateStart_s = Double.NaN;
+        m_inSpike = false;
+    }
+}
@@ -0,0 +1,88 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import java.util.ArrayList;
+import org.growingstems.measurements.Measurements.Time;
+
+/**
+ * Switches every registered {@link StartupNeutralMode} device between coast and its intended
+ * neutral mode in a single pass. Devices are expected to send one preallocated control request per
+ * call, so a transition costs one CAN frame per device. Transitions to the mode the devices are
+ * already in are skipped.
+ */
+public class NeutralModeOrchestrator {
+    private enum Mode {
+        UNKNOWN,
+        COAST,
+        INTENDED
+    }
+
+    private final ArrayList<StartupNeutralMode> m_devices = new ArrayList<>();
+    private Mode m_mode = Mode.UNKNOWN;
+    private Time m_lastTransitionTime = Time.ZERO;
+
+    /**
+     * Registers a device. If a transition has already happened the device is put into the current
+     * mode straight away.
+     *
+     * @param device The device to manage
+     */
+    public void register(StartupNeutralMode device) {
+        m_devices.add(device);
+        if (m_mode == Mode.COAST) {
+            device.coast();
+        } else if (m_mode == Mode.INTENDED) {
+            device.setIntendedNeutralMode();
+        }
+    }
+
+    /** Coasts every registered device. Used on boot and when the robot is disabled. */
+    public void coastAll() {
+        transition(Mode.COAST);
+    }
+
+    /** Puts every registered device into its intended neutral mode. Used when the robot enables. */
+    public void setIntendedNeutralModeAll() {
+        transition(Mode.INTENDED);
+    }
+
+    private void transition(Mode mode) {
+        if (mode == m_mode) {
+            m_lastTransitionTime = Time.ZERO;
+            return;
+        }
+
+        long start_us = WPIUtilJNI.now();
+        for (int i = 0; i < m_devices.size(); i++) {
+            if (mode == Mode.COAST) {
+                m_devices.get(i).coast();
+            } else {
+                m_devices.get(i).setIntendedNeutralMode();
+            }
+        }
+        m_mode = mode;
+        m_lastTransitionTime = Time.seconds((WPIUtilJNI.now() - start_us) * 1.0e-6);
+    }
+
+    /**
+     * Gets how long the last transition took. Zero if the last transition was skipped.
+     *
+     * @return the last transition time
+     */
+    public Time getLastTransitionTime() {
+        return m_lastTransitionTime;
+    }
+
+    /**
+     * Gets the number of registered devices.
+     *
+     * @return the number of devices
+     */
+    public int getDeviceCount() {
+        return m_devices.size();
+    }
+}
@@ -0,0 +1,306 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.growingstems.measurements.Measurements.Time;
+
+/**
+ * Runs independent update tasks, such as the HALs' CAN signal reads, in parallel on a small fixed
+ * pool of worker threads and the main thread.
+ *
+ * <p>Every task declares the resources it reads and writes as bit masks from {@link
+ * #addResource(String)}. Tasks are grouped into waves in registration order: a task is placed in
+ * the wave after the last earlier task it conflicts with, where two tasks conflict if either writes
+ * a resource the other reads or writes. Tasks within a wave run in parallel, and the next wave
+ * starts once every task of the current one finished. Conflicting tasks therefore always run in
+ * registration order and see the same data as they would serially, so the result doesn't depend
+ * on thread timing. Anything shared that isn't safe to use from several threads at once, like a
+ * log file, must be declared as a written resource by every task using it.
+ *
+ * <p>{@link #run()} returns once every task finished, acting as the barrier before commands run. It
+ * doesn't allocate once the waves are built. The time the tasks would have taken on a single
+ * thread is measured alongside the stage's wall time, see {@link #getSpeedup()}.
+ */
+public class ParallelUpdateStage {
+    private static final int k_maxResources = Long.SIZE;
+    // Workers spin this long for the next wave before parking, waves are typically microseconds apart
+    private static final long k_workerSpin_ns = 50_000;
+
+    private static class Task {
+        final String name;
+        final long reads;
+        final long writes;
+        final Runnable update;
+        volatile long time_us = 0;
+
+        Task(String name, long reads, long writes, Runnable update) {
+            this.name = name;
+            this.reads = reads;
+            this.writes = writes;
+            this.update = update;
+        }
+
+        boolean conflictsWith(Task other) {
+            return (writes & (other.reads | other.writes)) != 0 || (other.writes & reads) != 0;
+        }
+    }
+
+    private final int m_workerCount;
+    private final ArrayList<String> m_resources = new ArrayList<>();
+    private final ArrayList<Task> m_tasks = new ArrayList<>();
+    private final ArrayList<Thread> m_workers = new ArrayList<>();
+
+    // Waves, rebuilt whenever a task is added
+    private Task[][] m_waves = new Task[0][];
+    private boolean m_wavesDirty = false;
+
+    // Current wave, handed to the workers. Tasks are claimed from m_claim, which holds the wave
+    // number in the upper 32 bits and the next task index in the lower 32 bits, so a worker still
+    // holding a finished wave can't claim tasks of the next one. The claim is reset before the wave
+    // is published, so a worker can never pair a new wave with the previous wave's claim.
+    private volatile Task[] m_currentWave = null;
+    private final AtomicLong m_claim = new AtomicLong();
+    private final AtomicInteger m_finishedTasks = new AtomicInteger();
+    private volatile int m_waveNumber = 0;
+    private volatile RuntimeException m_failure = null;
+
+    // Metrics
+    private long m_stageTime_us = 0;
+    private long m_serialTime_us = 0;
+
+    /**
+     * Creates a stage. The worker threads are started when the first task is added.
+     *
+     * @param workerCount The number of worker threads used alongside the main thread
+     */
+    public ParallelUpdateStage(int workerCount) {
+        if (workerCount < 0) {
+            throw new IllegalArgumentException("Worker count can't be negative");
+        }
+        m_workerCount = workerCount;
+    }
+
+    /**
+     * Declares a resource tasks can read or write, i.e. a CAN bus or a log file. Adding a resource
+     * with the same name twice returns the same mask.
+     *
+     * @param name The name of the resource
+     * @return the bit mask of the resource, combine with {@code |} for tasks using several
+     */
+    public long addResource(String name) {
+        int index = m_resources.indexOf(name);
+        if (index < 0) {
+            if (m_resources.size() == k_maxResources) {
+                throw new IllegalStateException("At most " + k_maxResources + " resources are supported");
+            }
+            index = m_resources.size();
+            m_resources.add(name);
+        }
+        return 1L << index;
+    }
+
+    /**
+     * Adds a task to run every time the stage runs. Tasks should be added during robot init.
+     *
+     * @param name The name of the task, used in error messages
+     * @param reads The resources the task reads
+     * @param writes The resources the task writes
+     * @param update The task
+     */
+    public void addTask(String name, long reads, long writes, Runnable update) {
+        m_tasks.add(new Task(name, reads, writes, update));
+        m_wavesDirty = true;
+        startWorkers();
+    }
+
+    private void startWorkers() {
+        if (!m_workers.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < m_workerCount; i++) {
+            var worker = new Thread(this::workerLoop, "Parallel Update " + i);
+            worker.setDaemon(true);
+            m_workers.add(worker);
+            worker.start();
+        }
+    }
+
+    private void buildWaves() {
+        int[] taskWave = new int[m_tasks.size()];
+        int waveCount = 0;
+        for (int i = 0; i < m_tasks.size(); i++) {
+            int wave = 0;
+            for (int j = 0; j < i; j++) {
+                if (m_tasks.get(i).conflictsWith(m_tasks.get(j))) {
+                    wave = Math.max(wave, taskWave[j] + 1);
+                }
+            }
+            taskWave[i] = wave;
+            waveCount = Math.max(waveCount, wave + 1);
+        }
+
+        var waves = new ArrayList<ArrayList<Task>>();
+        for (int i = 0; i < waveCount; i++) {
+            waves.add(new ArrayList<>());
+        }
+        for (int i = 0; i < m_tasks.size(); i++) {
+            waves.get(taskWave[i]).add(m_tasks.get(i));
+        }
+
+        m_waves = new Task[waveCount][];
+        for (int i = 0; i < waveCount; i++) {
+            m_waves[i] = waves.get(i).toArray(new Task[0]);
+        }
+        m_wavesDirty = false;
+    }
+
+    /**
+     * Runs every task once and waits for all of them to finish. Rethrows the first exception thrown
+     * by a task once the stage completes. Does nothing while there are no tasks.
+     */
+    public void run() {
+        if (m_tasks.isEmpty()) {
+            return;
+        }
+        if (m_wavesDirty) {
+            buildWaves();
+        }
+
+        long start_us = WPIUtilJNI.now();
+        for (int i = 0; i < m_waves.length; i++) {
+            var wave = m_waves[i];
+            int waveNumber = m_waveNumber + 1;
+            m_finishedTasks.set(0);
+            m_claim.set((long) waveNumber << 32);
+            m_currentWave = wave;
+            // Publishes the wave to the workers
+            m_waveNumber = waveNumber;
+
+            // Only wake the workers when there's more than one task to share
+            if (wave.length > 1) {
+                for (int j = 0; j < m_workers.size(); j++) {
+                    LockSupport.unpark(m_workers.get(j));
+                }
+            }
+
+            runTasks(wave, waveNumber);
+            while (m_finishedTasks.get() < wave.length) {
+                Thread.onSpinWait();
+            }
+        }
+        m_currentWave = null;
+        m_stageTime_us = WPIUtilJNI.now() - start_us;
+
+        long serial_us = 0;
+        for (int i = 0; i < m_tasks.size(); i++) {
+            serial_us += m_tasks.get(i).time_us;
+        }
+        m_serialTime_us = serial_us;
+
+        var failure = m_failure;
+        if (failure != null) {
+            m_failure = null;
+            throw failure;
+        }
+    }
+
+    private void runTasks(Task[] wave, int waveNumber) {
+        while (true) {
+            long claim = m_claim.get();
+            int index = (int) claim;
+            if ((int) (claim >>> 32) != waveNumber || index >= wave.length) {
+                return;
+            }
+            if (!m_claim.compareAndSet(claim, claim + 1)) {
+                continue;
+            }
+
+            var task = wave[index];
+            long start_us = WPIUtilJNI.now();
+            try {
+                task.update.run();
+            } catch (RuntimeException e) {
+                if (m_failure == null) {
+                    m_failure = new RuntimeException("Parallel update task " + task.name + " failed", e);
+                }
+            } finally {
+                task.time_us = WPIUtilJNI.now() - start_us;
+                m_finishedTasks.incrementAndGet();
+            }
+        }
+    }
+
+    private void workerLoop() {
+        int lastWave = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long spinStart_ns = System.nanoTime();
+            while (m_waveNumber == lastWave) {
+                if (System.nanoTime() - spinStart_ns < k_workerSpin_ns) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            lastWave = m_waveNumber;
+
+            // Set before the wave number, so this is the wave numbered lastWave or a newer one,
+            // in which case no task can be claimed and the worker waits for the next wave. The
+            // claim was reset before the wave was set, so a newer wave is never claimed with the
+            // index left over from this one.
+            var wave = m_currentWave;
+            if (wave != null) {
+                runTasks(wave, lastWave);
+            }
+        }
+    }
+
+    /**
+     * Gets the wall time of the last run, from the first task starting to the last one finishing.
+     *
+     * @return the stage time
+     */
+    public Time getStageTime() {
+        return Time.seconds(m_stageTime_us * 1.0e-6);
+    }
+
+    /**
+     * Gets the sum of every task's run time during the last run, roughly how long the stage would
+     * have taken running every task on the main thread.
+     *
+     * @return the serial time
+     */
+    public Time getSerialTime() {
+        return Time.seconds(m_serialTime_us * 1.0e-6);
+    }
+
+    /**
+     * Gets how many times faster the last run was than running every task serially.
+     *
+     * @return the speedup, or 1.0 if the stage has no tasks
+     */
+    public double getSpeedup() {
+        if (m_stageTime_us <= 0) {
+            return 1.0;
+        }
+        return (double) m_serialTime_us / m_stageTime_us;
+    }
+
+    public int getTaskCount() {
+        return m_tasks.size();
+    }
+
+    public int getWaveCount() {
+        if (m_wavesDirty) {
+            buildWaves();
+        }
+        return m_waves.length;
+    }
+}
@@ -0,0 +1,206 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import org.growingstems.math.Pose2dU;
+import org.growingstems.measurements.Angle;
+import org.growingstems.measurements.Measurements.Length;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.Timestamped;
+
+/**
+ * Fixed capacity history of timestamped poses for latency compensation. Poses are kept in
+ * primitive ring buffers, looked up with a binary search and linearly interpolated between the two
+ * samples surrounding the requested time, with the heading interpolated the short way around.
+ *
+ * <p>{@link #add(double, double, double, double)} and {@link #sample(double, double[])} don't
+ * allocate, so the history can be queried many times per loop. Poses must be added in time order.
+ */
+public class PoseHistory {
+    /** Index of the x position, in inches, in the array filled by {@link #sample}. */
+    public static final int k_x = 0;
+    /** Index of the y position, in inches, in the array filled by {@link #sample}. */
+    public static final int k_y = 1;
+    /** Index of the heading, in degrees, in the array filled by {@link #sample}. */
+    public static final int k_heading = 2;
+
+    private final int m_capacity;
+    private final double[] m_timestamps_s;
+    private final double[] m_x_in;
+    private final double[] m_y_in;
+    private final double[] m_heading_deg;
+
+    // Physical index of the oldest sample
+    private int m_start = 0;
+    private int m_size = 0;
+
+    private final double[] m_scratch = new double[3];
+
+    /**
+     * Creates an empty history.
+     *
+     * @param capacity The number of poses to keep, older poses are overwritten
+     */
+    public PoseHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        m_capacity = capacity;
+        m_timestamps_s = new double[capacity];
+        m_x_in = new double[capacity];
+        m_y_in = new double[capacity];
+        m_heading_deg = new double[capacity];
+    }
+
+    /**
+     * Adds a pose. Poses older than the newest pose in the history are ignored.
+     *
+     * @param timestamp_s When the pose was measured
+     * @param x_in The x position in inches
+     * @param y_in The y position in inches
+     * @param heading_deg The heading in degrees
+     * @return true if the pose was added
+     */
+    public boolean add(double timestamp_s, double x_in, double y_in, double heading_deg) {
+        if (m_size > 0 && timestamp_s <= m_timestamps_s[physicalIndex(m_size - 1)]) {
+            return false;
+        }
+
+        int index;
+        if (m_size < m_capacity) {
+            index = physicalIndex(m_size);
+            m_size++;
+        } else {
+            // Full, overwrite the oldest
+            index = m_start;
+            m_start = (m_start + 1) % m_capacity;
+        }
+
+        m_timestamps_s[index] = timestamp_s;
+        m_x_in[index] = x_in;
+        m_y_in[index] = y_in;
+        m_heading_deg[index] = heading_deg;
+        return true;
+    }
+
+    /**
+     * Adds a timestamped pose.
+     *
+     * @param pose The pose
+     * @return true if the pose was added
+     */
+    public boolean add(Timestamped<Pose2dU<Length>> pose) {
+        var data = pose.getData();
+        return add(
+                pose.getTimestamp().asSeconds(),
+                data.getX().asInches(),
+                data.getY().asInches(),
+                data.getRotation().asDegrees());
+    }
+
+    /**
+     * Interpolates the pose at a past time. Times after the newest pose return the newest pose, no
+     * extrapolation is done.
+     *
+     * @param timestamp_s The time to look up
+     * @param out Filled with the pose, indexed by {@link #k_x}, {@link #k_y} and {@link #k_heading}
+     * @return false if the history is empty or the time is older than the oldest pose, in which
+     *     case out is left untouched
+     */
+    public boolean sample(double timestamp_s, double[] out) {
+        if (m_size == 0 || timestamp_s < m_timestamps_s[m_start]) {
+            return false;
+        }
+
+        int newest = physicalIndex(m_size - 1);
+        if (timestamp_s >= m_timestamps_s[newest]) {
+            copy(newest, out);
+            return true;
+        }
+
+        // Newest logical index with a timestamp at or before the requested time
+        int low = 0;
+        int high = m_size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (m_timestamps_s[physicalIndex(mid)] <= timestamp_s) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        int before = physicalIndex(low);
+        int after = physicalIndex(low + 1);
+        double t = (timestamp_s - m_timestamps_s[before])
+                / (m_timestamps_s[after] - m_timestamps_s[before]);
+
+        out[k_x] = m_x_in[before] + (m_x_in[after] - m_x_in[before]) * t;
+        out[k_y] = m_y_in[before] + (m_y_in[after] - m_y_in[before]) * t;
+        double headingChange_deg =
+                Math.IEEEremainder(m_heading_deg[after] - m_heading_deg[before], 360.0);
+        out[k_heading] = Math.IEEEremainder(m_heading_deg[before] + headingChange_deg * t, 360.0);
+        return true;
+    }
+
+    /**
+     * Interpolates the pose at a past time. Allocates the returned pose, use {@link #sample(double,
+     * double[])} in hot paths.
+     *
+     * @param timestamp The time to look up
+     * @return the pose, or null if the history is empty or the time is older than the oldest pose
+     */
+    public Pose2dU<Length> getPose(Time timestamp) {
+        if (!sample(timestamp.asSeconds(), m_scratch)) {
+            return null;
+        }
+        return new Pose2dU<>(
+                Length.inches(m_scratch[k_x]),
+                Length.inches(m_scratch[k_y]),
+                Angle.degrees(m_scratch[k_heading]));
+    }
+
+    private void copy(int index, double[] out) {
+        out[k_x] = m_x_in[index];
+        out[k_y] = m_y_in[index];
+        out[k_heading] = m_heading_deg[index];
+    }
+
+    private int physicalIndex(int logicalIndex) {
+        return (m_start + logicalIndex) % m_capacity;
+    }
+
+    /** Removes every pose. */
+    public void clear() {
+        m_start = 0;
+        m_size = 0;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * Gets the timestamp of the oldest pose.
+     *
+     * @return the oldest timestamp in seconds, or NaN if empty
+     */
+    public double getOldestTimestamp_s() {
+        return m_size == 0 ? Double.NaN : m_timestamps_s[m_start];
+    }
+
+    /**
+     * Gets the timestamp of the newest pose.
+     *
+     * @return the newest timestamp in seconds, or NaN if empty
+     */
+    public double getNewestTimestamp_s() {
+        return m_size == 0 ? Double.NaN : m_timestamps_s[physicalIndex(m_size - 1)];
+    }
+}
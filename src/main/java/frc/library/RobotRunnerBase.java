@@ -74,8 +74,21 @@ public abstract class RobotRunnerBase extends RobotBase {
     /** Called once before switching from test mode to another mode or before being disabled. */
     protected abstract void testExit();
 
+    /**
+     * Called at the end of every loop iteration, right before the main thread sleeps. Work handed
+     * off to other threads here overlaps with the sleep instead of with robot code. Not counted in
+     * the main execution time.
+     */
+    protected abstract void sleepInit();
+
+    // The roboRIO has two cores, the main thread and one worker share the parallel update stage
+    private static final int k_parallelUpdateWorkers = 1;
+
     private MatchState m_previousMatchState = MatchState.UNKNOWN_DISABLED;
     private volatile boolean m_exit = false;
+    private final NeutralModeOrchestrator m_neutralModeOrchestrator = new NeutralModeOrchestrator();
+    private final ParallelUpdateStage m_parallelUpdateStage =
+            new ParallelUpdateStage(k_parallelUpdateWorkers);
 
     // Timers
     private final TimeSource m_wpiTimeSource = new WpiTimeSource();
@@ -88,13 +101,30 @@ public abstract class RobotRunnerBase extends RobotBase {
     private Time m_mainExecutionTime = Time.ZERO;
     private Time m_exitTime = Time.ZERO;
     private Time m_initTime = Time.ZERO;
+    private Time m_neutralModeTime = Time.ZERO;
+    private Time m_parallelUpdateTime = Time.ZERO;
     private Time m_robotPeriodicTime = Time.ZERO;
     private Time m_modePeriodicTime = Time.ZERO;
     private Time m_sleepTime = Time.ZERO;
+    // Microseconds, so the loop doesn't allocate a Time every iteration
+    private long m_loopStart_us = 0;
+
+    // Allocation variables (bytes allocated by the main thread)
+    private long m_sectionAllocationStart = 0;
+    private long m_mainExecutionAllocatedBytes = 0;
+    private long m_exitAllocatedBytes = 0;
+    private long m_initAllocatedBytes = 0;
+    private long m_parallelUpdateAllocatedBytes = 0;
+    private long m_robotPeriodicAllocatedBytes = 0;
+    private long m_modePeriodicAllocatedBytes = 0;
 
     @Override
     public void startCompetition() {
+        long robotInitStart = StartupTimeline.start();
         robotInit();
+        StartupTimeline.record("robotInit()", robotInitStart);
+        // The robot boots disabled
+        m_neutralModeOrchestrator.coastAll();
 
         DriverStationModeThread modeThread = new DriverStationModeThread();
 
@@ -103,12 +133,15 @@ public abstract class RobotRunnerBase extends RobotBase {
         DriverStation.provideRefreshedDataEventHandle(event);
 
         // Tell the DS that the robot is ready to be enabled
+        StartupTimeline.print();
         System.out.println("********** Robot program startup complete **********");
         DriverStationJNI.observeUserProgramStarting();
 
         m_mainLoopTimer.reset();
         while (!Thread.currentThread().isInterrupted() && !m_exit) {
             m_mainExecutionTimer.reset();
+            m_loopStart_us = WPIUtilJNI.now();
+            long mainExecutionAllocationStart = AllocationMeter.getCurrentThreadAllocatedBytes();
             // This has to be called in order for RobotMatchState, which uses DriverStation,
             // to work.
             DriverStation.refreshData();
@@ -118,7 +151,7 @@ public abstract class RobotRunnerBase extends RobotBase {
 
             if (matchStateChanged) {
                 // Run Exit Functions
-                m_sectionTimer.reset();
+                startSection();
                 if (m_previousMatchState.enabled) {
                     if (m_previousMatchState.matchMode == MatchMode.AUTO) {
                         autonomousExit();
@@ -135,9 +168,19 @@ public abstract class RobotRunnerBase extends RobotBase {
                     modeThread.inDisabled(false);
                 }
                 m_exitTime = m_sectionTimer.get();
+                m_exitAllocatedBytes = getSectionAllocatedBytes();
 
                 // Run Init Functions
-                m_sectionTimer.reset();
+                startSection();
+                // Neutral modes are switched before any init code, so that outputs set by init
+                // aren't overridden
+                if (currentMatchState.enabled) {
+                    m_neutralModeOrchestrator.setIntendedNeutralModeAll();
+                } else {
+                    m_neutralModeOrchestrator.coastAll();
+                }
+                m_neutralModeTime = m_neutralModeOrchestrator.getLastTransitionTime();
+
                 if (currentMatchState.enabled) {
                     if (currentMatchState.matchMode == MatchMode.AUTO) {
                         modeThread.inAutonomous(true);
@@ -156,17 +199,33 @@ public abstract class RobotRunnerBase extends RobotBase {
                     disabledInit();
                 }
                 m_initTime = m_sectionTimer.get();
+                m_initAllocatedBytes = getSectionAllocatedBytes();
             } else {
                 m_initTime = Time.ZERO;
+                m_neutralModeTime = Time.ZERO;
                 m_exitTime = Time.ZERO;
+                m_initAllocatedBytes = 0;
+                m_exitAllocatedBytes = 0;
             }
 
-            m_sectionTimer.reset();
+            // Subsystem updates, finished before any command runs in robotPeriodic()
+            if (m_parallelUpdateStage.getTaskCount() > 0) {
+                startSection();
+                m_parallelUpdateStage.run();
+                m_parallelUpdateTime = m_sectionTimer.get();
+                m_parallelUpdateAllocatedBytes = getSectionAllocatedBytes();
+            } else {
+                m_parallelUpdateTime = Time.ZERO;
+                m_parallelUpdateAllocatedBytes = 0;
+            }
+
+            startSection();
             robotPeriodic();
             m_robotPeriodicTime = m_sectionTimer.get();
+            m_robotPeriodicAllocatedBytes = getSectionAllocatedBytes();
 
             // Run Periodic Functions
-            m_sectionTimer.reset();
+            startSection();
             if (currentMatchState.enabled) {
                 if (currentMatchState.matchMode == MatchMode.EMERGENCY_STOPPED) {
                     emergencyStopPeriodic();
@@ -181,7 +240,12 @@ public abstract class RobotRunnerBase extends RobotBase {
                 disabledPeriodic();
             }
             m_modePeriodicTime = m_sectionTimer.get();
+            m_modePeriodicAllocatedBytes = getSectionAllocatedBytes();
             m_mainExecutionTime = m_mainExecutionTimer.get();
+            m_mainExecutionAllocatedBytes =
+                    AllocationMeter.getCurrentThreadAllocatedBytes() - mainExecutionAllocationStart;
+
+            sleepInit();
 
             m_sectionTimer.reset();
             try {
@@ -200,11 +264,41 @@ public abstract class RobotRunnerBase extends RobotBase {
         modeThread.close();
     }
 
+    private void startSection() {
+        m_sectionTimer.reset();
+        m_sectionAllocationStart = AllocationMeter.getCurrentThreadAllocatedBytes();
+    }
+
+    private long getSectionAllocatedBytes() {
+        return AllocationMeter.getCurrentThreadAllocatedBytes() - m_sectionAllocationStart;
+    }
+
     @Override
     public void endCompetition() {
         m_exit = true;
     }
 
+    /**
+     * Gets the FPGA timestamp captured at the start of the current main loop iteration. Anything
+     * timestamped in the same time base (e.g. GC events) can be compared against this to find which
+     * loop iteration it landed in.
+     *
+     * @return the timestamp of the start of the current loop iteration
+     */
+    public Time getLoopStartTimestamp() {
+        return Time.seconds(m_loopStart_us * 1.0e-6);
+    }
+
+    /**
+     * Gets the FPGA timestamp captured at the start of the current main loop iteration, without
+     * allocating.
+     *
+     * @return the timestamp of the start of the current loop iteration, in microseconds
+     */
+    public long getLoopStart_us() {
+        return m_loopStart_us;
+    }
+
     /**
      * Gets the amount of time it took for the main thread to fully loop.
      *
@@ -247,6 +341,49 @@ public abstract class RobotRunnerBase extends RobotBase {
         return m_initTime;
     }
 
+    /**
+     * Gets the part of {@link #getInitTime()} spent switching the neutral mode of every device
+     * registered with the {@link NeutralModeOrchestrator}. Will return zero if init wasn't ran or
+     * the devices were already in the right mode.
+     *
+     * @return the neutral mode transition time
+     */
+    public Time getNeutralModeTime() {
+        return m_neutralModeTime;
+    }
+
+    /**
+     * Gets the orchestrator that switches devices between coast and their intended neutral mode
+     * when the robot is disabled and enabled. Devices implementing {@link StartupNeutralMode}
+     * should register with it.
+     *
+     * @return the neutral mode orchestrator
+     */
+    public NeutralModeOrchestrator getNeutralModeOrchestrator() {
+        return m_neutralModeOrchestrator;
+    }
+
+    /**
+     * Gets the stage that runs subsystem updates in parallel right before {@link #robotPeriodic()}.
+     * Subsystem HALs should add their {@code update()} to it during robot init, along with the
+     * resources they read and write.
+     *
+     * @return the parallel update stage
+     */
+    public ParallelUpdateStage getParallelUpdateStage() {
+        return m_parallelUpdateStage;
+    }
+
+    /**
+     * Gets the amount of time it took to run the {@link ParallelUpdateStage}, see {@link
+     * ParallelUpdateStage#getSpeedup()} for how it compares to running the updates serially.
+     *
+     * @return the parallel update stage run time
+     */
+    public Time getParallelUpdateTime() {
+        return m_parallelUpdateTime;
+    }
+
     /**
      * Gets the amount of time it took to run the general robot periodic code. This is the code ran
      * within the {@link robotPeriodic} function which always runs no matter what mode or state the
@@ -276,4 +413,62 @@ public abstract class RobotRunnerBase extends RobotBase {
     public Time getSleepTime() {
         return m_sleepTime;
     }
+
+    /**
+     * Gets the number of bytes the main thread allocated while executing robot code in the last loop
+     * iteration. Zero if the JVM doesn't support allocation accounting.
+     *
+     * @return bytes allocated during the main execution
+     */
+    public long getMainExecutionAllocatedBytes() {
+        return m_mainExecutionAllocatedBytes;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the previous mode's exit code. Will return zero if exit
+     * wasn't ran.
+     *
+     * @return bytes allocated during the previous mode's exit
+     */
+    public long getExitAllocatedBytes() {
+        return m_exitAllocatedBytes;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current mode's init code. Will return zero if init
+     * wasn't ran.
+     *
+     * @return bytes allocated during the current mode's init
+     */
+    public long getInitAllocatedBytes() {
+        return m_initAllocatedBytes;
+    }
+
+    /**
+     * Gets the number of bytes the main thread allocated while running the {@link
+     * ParallelUpdateStage}. Bytes allocated by tasks on worker threads aren't counted.
+     *
+     * @return bytes allocated by the main thread during the parallel update stage
+     */
+    public long getParallelUpdateAllocatedBytes() {
+        return m_parallelUpdateAllocatedBytes;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the general robot periodic code.
+     *
+     * @return bytes allocated during robot periodic
+     */
+    public long getRobotPeriodicAllocatedBytes() {
+        return m_robotPeriodicAllocatedBytes;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the mode specific periodic code.
+     *
+     * @return bytes allocated during mode periodic
+     */
+    public long getModePeriodicAllocatedBytes() {
+        return m_modePeriodicAllocatedBytes;
+    }
 }
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Records how long each step of robot startup takes, i.e. {@code robotInit()}, the log builder and
+ * each HAL constructor, so that the time from JVM start to the robot being ready can be broken
+ * down. Steps may be nested, in which case the outer step's duration includes the inner ones.
+ *
+ * <pre>
+ * long start = StartupTimeline.start();
+ * // ...
+ * StartupTimeline.record("Feeder Rollers HAL", start);
+ * </pre>
+ */
+public final class StartupTimeline {
+    private static record Step(String name, long start_us, long duration_us) {}
+
+    private static final ArrayList<Step> steps = new ArrayList<>();
+
+    private StartupTimeline() {}
+
+    /**
+     * Gets the start time of a step.
+     *
+     * @return the current FPGA time in microseconds
+     */
+    public static long start() {
+        return WPIUtilJNI.now();
+    }
+
+    /**
+     * Records a finished step.
+     *
+     * @param name The name of the step
+     * @param start_us The start time returned by {@link #start()}
+     */
+    public static synchronized void record(String name, long start_us) {
+        steps.add(new Step(name, start_us, WPIUtilJNI.now() - start_us));
+    }
+
+    /** Prints every recorded step in the order they started, and the time since the JVM started. */
+    public static synchronized void print() {
+        var sorted = new ArrayList<>(steps);
+        sorted.sort((a, b) -> Long.compare(a.start_us(), b.start_us()));
+
+        System.out.println("********** Startup Timeline **********");
+        for (var step : sorted) {
+            System.out.printf("%8.1f ms  %s%n", step.duration_us() / 1000.0, step.name());
+        }
+        var runtime = ManagementFactory.getRuntimeMXBean();
+        boolean classDataSharing = false;
+        for (var argument : runtime.getInputArguments()) {
+            classDataSharing |= argument.startsWith("-XX:SharedArchiveFile");
+        }
+        System.out.printf(
+                "JVM start to ready: %d ms (class data sharing %s)%n",
+                runtime.getUptime(),
+                classDataSharing ? "on" : "off");
+    }
+}
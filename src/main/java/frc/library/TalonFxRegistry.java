@@ -0,0 +1,185 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.hardware.TalonFX;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.growingstems.measurements.Measurements.Current;
+
+/**
+ * Central list of every TalonFX on the robot. HALs register their motors here when constructed so
+ * that robot wide services (bus monitoring, health, power) can work across all devices without each
+ * HAL implementing them.
+ */
+public class TalonFxRegistry {
+    /** A group of signals that can be slowed down when the CAN bus is busy. */
+    public static class SignalGroup {
+        private final double m_nominalFrequency_Hz;
+        private final double m_reducedFrequency_Hz;
+        private final BaseStatusSignal[] m_signals;
+
+        SignalGroup(
+                double nominalFrequency_Hz, double reducedFrequency_Hz, BaseStatusSignal[] signals) {
+            m_nominalFrequency_Hz = nominalFrequency_Hz;
+            m_reducedFrequency_Hz = reducedFrequency_Hz;
+            m_signals = signals;
+        }
+
+        public double getNominalFrequency_Hz() {
+            return m_nominalFrequency_Hz;
+        }
+
+        public double getReducedFrequency_Hz() {
+            return m_reducedFrequency_Hz;
+        }
+
+        public BaseStatusSignal[] getSignals() {
+            return m_signals;
+        }
+    }
+
+    /** A registered TalonFX and the information services need about it. */
+    public static class Device {
+        private final String m_name;
+        private final TalonFX m_motor;
+        private final ArrayList<SignalGroup> m_lowPrioritySignals = new ArrayList<>();
+        private Current m_supplyCurrentLimit = null;
+        private Current m_statorCurrentLimit = null;
+
+        Device(String name, TalonFX motor) {
+            m_name = name;
+            m_motor = motor;
+        }
+
+        /**
+         * Registers signals that are not needed for control and can be slowed down when the CAN bus
+         * is busy, i.e. temperatures or acceleration.
+         *
+         * @param nominalFrequency_Hz The frequency the signals are configured to run at normally
+         * @param reducedFrequency_Hz The frequency to drop the signals to when the bus is busy. 0
+         *     disables the signals, otherwise the minimum is 4 Hz.
+         * @param signals The signals
+         * @return this
+         */
+        public Device withLowPrioritySignals(
+                double nominalFrequency_Hz, double reducedFrequency_Hz, BaseStatusSignal... signals) {
+            m_lowPrioritySignals.add(
+                    new SignalGroup(nominalFrequency_Hz, reducedFrequency_Hz, signals));
+            return this;
+        }
+
+        /**
+         * Registers the current limits the device is configured with. These are the most the device
+         * will be allowed to draw when limits are redistributed at runtime.
+         *
+         * @param supplyCurrentLimit The configured supply current limit
+         * @param statorCurrentLimit The configured stator current limit
+         * @return this
+         */
+        public Device withCurrentLimits(Current supplyCurrentLimit, Current statorCurrentLimit) {
+            m_supplyCurrentLimit = supplyCurrentLimit;
+            m_statorCurrentLimit = statorCurrentLimit;
+            return this;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        public TalonFX getMotor() {
+            return m_motor;
+        }
+
+        public List<SignalGroup> getLowPrioritySignals() {
+            return Collections.unmodifiableList(m_lowPrioritySignals);
+        }
+
+        /**
+         * Gets the configured supply current limit.
+         *
+         * @return the supply current limit, or null if not registered
+         */
+        public Current getSupplyCurrentLimit() {
+            return m_supplyCurrentLimit;
+        }
+
+        /**
+         * Gets the configured stator current limit.
+         *
+         * @return the stator current limit, or null if not registered
+         */
+        public Current getStatorCurrentLimit() {
+            return m_statorCurrentLimit;
+        }
+    }
+
+    private double m_outputScale = 1.0;
+    private boolean m_controlSuppressed = false;
+    private final ArrayList<Device> m_devices = new ArrayList<>();
+
+    /**
+     * Registers a motor.
+     *
+     * @param name Name of the device used for logging and alerts, i.e. "Collector Rollers"
+     * @param motor The motor
+     * @return The registered device, to add additional information to
+     */
+    public Device register(String name, TalonFX motor) {
+        var device = new Device(name, motor);
+        m_devices.add(device);
+        return device;
+    }
+
+    /**
+     * Gets every registered device in registration order.
+     *
+     * @return the registered devices
+     */
+    public List<Device> getDevices() {
+        return Collections.unmodifiableList(m_devices);
+    }
+
+    /**
+     * Sets the scale open loop outputs of registered devices are multiplied by. Used to shed
+     * electrical load when the battery is low.
+     *
+     * @param outputScale The output scale, from 0 to 1
+     */
+    public void setOutputScale(double outputScale) {
+        m_outputScale = Math.max(0.0, Math.min(1.0, outputScale));
+    }
+
+    /**
+     * Gets the scale open loop outputs of registered devices should be multiplied by.
+     *
+     * @return the output scale, from 0 to 1
+     */
+    public double getOutputScale() {
+        return m_outputScale;
+    }
+
+    /**
+     * Sets whether HALs hold back the control requests of registered devices. The HALs still
+     * track their setpoints, so their control code can be run, i.e. to warm it up, without sending
+     * any control frames to the motors.
+     *
+     * @param controlSuppressed true to stop sending control requests
+     */
+    public void setControlSuppressed(boolean controlSuppressed) {
+        m_controlSuppressed = controlSuppressed;
+    }
+
+    /**
+     * Gets whether HALs should hold back the control requests of registered devices.
+     *
+     * @return true if control requests must not be sent
+     */
+    public boolean isControlSuppressed() {
+        return m_controlSuppressed;
+    }
+}
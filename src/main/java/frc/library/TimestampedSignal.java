@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Utils;
+
+/**
+ * Wraps a CTRE status signal to capture the time its value was measured along with the value
+ * itself. Keeps the slope between the last two distinct samples so the value can be extrapolated
+ * forward by the signal's latency for control.
+ *
+ * <p>Phoenix timestamps are in the time base of {@code Utils.getCurrentTimeSeconds()}, which isn't
+ * the FPGA time base on a real robot. They are converted to FPGA time when sampled, so they line up
+ * with the loop timestamps of the rest of the log. Sampling doesn't allocate, so the signal itself
+ * can be logged as a {@link TimestampedValue} every loop.
+ */
+public class TimestampedSignal implements TimestampedValue {
+    private final StatusSignal<Double> m_signal;
+
+    private double m_value = 0.0;
+    private double m_timestamp_s = 0.0;
+    private double m_deviceTimestamp_s = 0.0;
+    private double m_latency_s = 0.0;
+    private double m_slope_perSecond = 0.0;
+    private boolean m_hasSample = false;
+
+    public TimestampedSignal(StatusSignal<Double> signal) {
+        m_signal = signal;
+    }
+
+    /**
+     * Gets the wrapped signal, i.e. to refresh several signals at once with {@code
+     * BaseStatusSignal.refreshAll()} before calling {@link #sample()}.
+     *
+     * @return the wrapped signal
+     */
+    public StatusSignal<Double> getSignal() {
+        return m_signal;
+    }
+
+    /** Refreshes the signal from the CAN bus and samples it. */
+    public void refresh() {
+        m_signal.refresh();
+        sample();
+    }
+
+    /**
+     * Samples the signal's last refreshed value without refreshing it.
+     *
+     * @return true if the sample is newer than the previous one
+     */
+    public boolean sample() {
+        var timestamp = m_signal.getTimestamp();
+        double value = m_signal.getValueAsDouble();
+        double deviceTimestamp_s = timestamp.getTime();
+        m_latency_s = timestamp.getLatency();
+
+        // Compared in the Phoenix time base, the conversion offset jitters from call to call
+        if (m_hasSample && deviceTimestamp_s > m_deviceTimestamp_s) {
+            m_slope_perSecond = (value - m_value) / (deviceTimestamp_s - m_deviceTimestamp_s);
+        }
+        if (m_hasSample && deviceTimestamp_s <= m_deviceTimestamp_s) {
+            return false;
+        }
+
+        m_value = value;
+        m_deviceTimestamp_s = deviceTimestamp_s;
+        // fpgaToCurrentTime(0) is the offset of the Phoenix time base from FPGA time
+        m_timestamp_s = deviceTimestamp_s - Utils.fpgaToCurrentTime(0.0);
+        m_hasSample = true;
+        return true;
+    }
+
+    /**
+     * Gets the last sampled value.
+     *
+     * @return the value as of {@link #getTimestamp_s()}
+     */
+    @Override
+    public double getValue() {
+        return m_value;
+    }
+
+    /**
+     * Gets the time the last sampled value was measured, in the FPGA time base.
+     *
+     * @return the timestamp in seconds
+     */
+    @Override
+    public double getTimestamp_s() {
+        return m_timestamp_s;
+    }
+
+    /**
+     * Gets how old the last sampled value was when it was sampled.
+     *
+     * @return the latency in seconds
+     */
+    public double getLatency_s() {
+        return m_latency_s;
+    }
+
+    /**
+     * Gets the last sampled value extrapolated forward by its latency, using the slope between the
+     * last two samples.
+     *
+     * @return the latency compensated value
+     */
+    public double getCompensatedValue() {
+        return m_value + m_slope_perSecond * m_latency_s;
+    }
+}
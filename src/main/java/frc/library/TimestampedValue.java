@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+/**
+ * A value along with the time it was measured, read as primitives. Unlike a {@code Timestamped}
+ * measurement, an implementation can be updated in place and logged every loop without allocating.
+ */
+public interface TimestampedValue {
+    /** A zero value measured at time zero, i.e. the default of a log entry. */
+    TimestampedValue ZERO = of(0.0, 0.0);
+
+    /**
+     * Creates a fixed value, i.e. one read back from a log.
+     *
+     * @param value The value
+     * @param timestamp_s The time the value was measured, in the FPGA time base
+     * @return the timestamped value
+     */
+    static TimestampedValue of(double value, double timestamp_s) {
+        return new TimestampedValue() {
+            @Override
+            public double getValue() {
+                return value;
+            }
+
+            @Override
+            public double getTimestamp_s() {
+                return timestamp_s;
+            }
+        };
+    }
+
+    /**
+     * Gets the value.
+     *
+     * @return the value as of {@link #getTimestamp_s()}
+     */
+    double getValue();
+
+    /**
+     * Gets the time the value was measured, in the FPGA time base.
+     *
+     * @return the timestamp in seconds
+     */
+    double getTimestamp_s();
+}
@@ -0,0 +1,48 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import com.ctre.phoenix6.configs.MotionMagicConfigs;
+import com.ctre.phoenix6.configs.Slot0Configs;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+
+/**
+ * Slot 0 gains and motion magic profile limits for closed loop velocity control of a TalonFX. Gains
+ * are in volts against rotor rotations per second.
+ *
+ * @param kS Volts to overcome static friction
+ * @param kV Volts per rotation per second
+ * @param kA Volts per rotation per second squared
+ * @param kP Volts per rotation per second of error
+ * @param acceleration_rps2 The most the profile accelerates, in rotations per second squared
+ * @param jerk_rps3 The most the profile's acceleration changes, in rotations per second cubed
+ */
+public record VelocityGains(
+        double kS, double kV, double kA, double kP, double acceleration_rps2, double jerk_rps3) {
+    /** Gains that suit the rollers on the robot, tuned on the feeder. */
+    public static final VelocityGains k_rollerDefaults =
+            new VelocityGains(0.25, 0.12, 0.01, 0.1, 400.0, 4000.0);
+
+    /**
+     * Sets slot 0 and the motion magic profile limits of a configuration to these gains.
+     *
+     * @param configuration The configuration to apply the gains to
+     * @return the configuration
+     */
+    public TalonFXConfiguration apply(TalonFXConfiguration configuration) {
+        var slot0 = new Slot0Configs();
+        slot0.kS = kS;
+        slot0.kV = kV;
+        slot0.kA = kA;
+        slot0.kP = kP;
+        configuration.withSlot0(slot0);
+
+        var motionMagic = new MotionMagicConfigs();
+        motionMagic.MotionMagicAcceleration = acceleration_rps2;
+        motionMagic.MotionMagicJerk = jerk_rps3;
+        configuration.withMotionMagic(motionMagic);
+        return configuration;
+    }
+}
@@ -0,0 +1,113 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library.command;
+
+/**
+ * A command run by a {@link LiteCommandRunner}. Mirrors the lifecycle of a WPILib command, but
+ * requirements are a bitmask of mechanisms rather than a set of subsystems. Instances are meant to be
+ * created once at startup and rescheduled as needed, so that running them never allocates.
+ */
+public abstract class LiteCommand {
+    private final String m_name;
+    private final long m_requirements;
+
+    // Managed by LiteCommandRunner
+    LiteCommandRunner m_runner = null;
+    boolean m_canceled = false;
+
+    /**
+     * Creates a command.
+     *
+     * @param name Name of the command, used for debugging
+     * @param requirements Bitmask of the mechanisms this command requires. Two commands sharing a
+     *     bit cannot run at the same time. See {@link LiteCommandRunner#requirement(int)}.
+     */
+    protected LiteCommand(String name, long requirements) {
+        m_name = name;
+        m_requirements = requirements;
+    }
+
+    /**
+     * Creates a command which calls the given functions each loop and when it ends. Both functions
+     * should be created once, i.e. method references to a mechanism, and not captured each loop.
+     *
+     * @param name Name of the command, used for debugging
+     * @param requirements Bitmask of the mechanisms this command requires
+     * @param run Called every loop while the command is scheduled
+     * @param end Called once when the command is canceled or interrupted
+     * @return The command
+     */
+    public static LiteCommand runEnd(String name, long requirements, Runnable run, Runnable end) {
+        return new LiteCommand(name, requirements) {
+            @Override
+            public void execute() {
+                run.run();
+            }
+
+            @Override
+            public void end(boolean interrupted) {
+                end.run();
+            }
+        };
+    }
+
+    /** Called once when the command is scheduled. */
+    public void initialize() {}
+
+    /** Called every loop while the command is scheduled. */
+    public abstract void execute();
+
+    /**
+     * Called after every {@link #execute()} to check if the command is done.
+     *
+     * @return true if the command should end
+     */
+    public boolean isFinished() {
+        return false;
+    }
+
+    /**
+     * Called once when the command ends, either by finishing or by being canceled or interrupted.
+     *
+     * @param interrupted true if the command was canceled or interrupted by another command
+     */
+    public void end(boolean interrupted) {}
+
+    /**
+     * Whether the command keeps running while the robot is disabled.
+     *
+     * @return true if the command runs when disabled
+     */
+    public boolean runsWhenDisabled() {
+        return false;
+    }
+
+    /**
+     * Gets the name of the command.
+     *
+     * @return the name of the command
+     */
+    public final String getName() {
+        return m_name;
+    }
+
+    /**
+     * Gets the bitmask of mechanisms the command requires.
+     *
+     * @return the requirement bitmask
+     */
+    public final long getRequirements() {
+        return m_requirements;
+    }
+
+    /**
+     * Whether the command is currently scheduled on a runner.
+     *
+     * @return true if scheduled
+     */
+    public final boolean isScheduled() {
+        return m_runner != null && !m_canceled;
+    }
+}
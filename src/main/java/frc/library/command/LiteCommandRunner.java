@@ -0,0 +1,258 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library.command;
+
+/**
+ * Fixed capacity, allocation free command runner. Meant for mechanisms that need deterministic per
+ * loop execution without the hash set walks, iterators and event loop lambdas of WPILib's {@code
+ * CommandScheduler}. It runs alongside the {@code CommandScheduler} and does not know about its
+ * subsystems, so a mechanism should be driven by one or the other, not both.
+ *
+ * <p>Commands run in the order they were scheduled. Scheduling a command interrupts every running
+ * command that shares a requirement bit with it.
+ */
+public class LiteCommandRunner {
+    private final LiteCommand[] m_commands;
+    private final LiteCommand[] m_pending;
+    private int m_commandCount = 0;
+    private int m_pendingCount = 0;
+    private long m_requirementsInUse = 0;
+    // The robot boots disabled
+    private boolean m_enabled = false;
+    // Greater than zero while commands are being run or ended. Commands scheduled meanwhile, i.e.
+    // from a command's end(), are deferred and ended commands are only removed once back at zero,
+    // so the command array is never compacted while it is being walked.
+    private int m_depth = 0;
+
+    /**
+     * Creates a runner.
+     *
+     * @param capacity Maximum number of commands that can be scheduled at once
+     */
+    public LiteCommandRunner(int capacity) {
+        m_commands = new LiteCommand[capacity];
+        m_pending = new LiteCommand[capacity];
+    }
+
+    /**
+     * Gets the requirement bit for a mechanism.
+     *
+     * @param mechanismIndex Index of the mechanism, 0 to 63
+     * @return The requirement bitmask containing only the given mechanism
+     * @throws IllegalArgumentException if the index is outside of 0 to 63
+     */
+    public static long requirement(int mechanismIndex) {
+        if (mechanismIndex < 0 || mechanismIndex >= Long.SIZE) {
+            throw new IllegalArgumentException(
+                    "Mechanism index " + mechanismIndex + " is outside of 0 to " + (Long.SIZE - 1));
+        }
+        return 1L << mechanismIndex;
+    }
+
+    /**
+     * Schedules a command, interrupting any running commands that share requirements with it. If
+     * called while the runner is running or ending commands, the command is scheduled once that
+     * completes. Does nothing if the command is already scheduled.
+     *
+     * @param command The command to schedule
+     * @return false if the runner is full, or if the robot is disabled and the command doesn't run
+     *     when disabled
+     */
+    public boolean schedule(LiteCommand command) {
+        if (command.m_runner == this && !command.m_canceled) {
+            return true;
+        }
+        if (command.m_runner != null && command.m_runner != this) {
+            throw new IllegalStateException(
+                    command.getName() + " is already scheduled on another runner");
+        }
+        if (!m_enabled && !command.runsWhenDisabled()) {
+            return false;
+        }
+
+        if (m_depth > 0) {
+            if (indexOfPending(command) >= 0) {
+                return true;
+            }
+            if (m_pendingCount == m_pending.length) {
+                return false;
+            }
+            m_pending[m_pendingCount++] = command;
+            return true;
+        }
+
+        m_depth++;
+        if ((m_requirementsInUse & command.getRequirements()) != 0) {
+            for (int i = 0; i < m_commandCount; i++) {
+                var running = m_commands[i];
+                if (!running.m_canceled
+                        && (running.getRequirements() & command.getRequirements()) != 0) {
+                    endCommand(running, true);
+                }
+            }
+            compact();
+        }
+
+        boolean scheduled = m_commandCount < m_commands.length;
+        if (scheduled) {
+            command.m_runner = this;
+            command.m_canceled = false;
+            m_commands[m_commandCount++] = command;
+            m_requirementsInUse |= command.getRequirements();
+            command.initialize();
+        }
+        finishOperation();
+        return scheduled;
+    }
+
+    /**
+     * Cancels a command if it is scheduled on this runner or waiting to be scheduled.
+     *
+     * @param command The command to cancel
+     */
+    public void cancel(LiteCommand command) {
+        int pendingIndex = indexOfPending(command);
+        if (pendingIndex >= 0) {
+            removePending(pendingIndex);
+            return;
+        }
+        if (command.m_runner != this || command.m_canceled) {
+            return;
+        }
+
+        m_depth++;
+        endCommand(command, true);
+        finishOperation();
+    }
+
+    /** Cancels every scheduled command and every command waiting to be scheduled. */
+    public void cancelAll() {
+        clearPending();
+        m_depth++;
+        for (int i = 0; i < m_commandCount; i++) {
+            if (!m_commands[i].m_canceled) {
+                endCommand(m_commands[i], true);
+            }
+        }
+        // Commands scheduled by the ended commands are canceled too
+        clearPending();
+        finishOperation();
+    }
+
+    /**
+     * Runs every scheduled command once. Call once per loop.
+     *
+     * @param enabled Whether the robot is enabled. Commands that don't run when disabled are
+     *     canceled while disabled, and can't be scheduled until the robot is enabled.
+     */
+    public void run(boolean enabled) {
+        m_enabled = enabled;
+        m_depth++;
+        for (int i = 0; i < m_commandCount; i++) {
+            var command = m_commands[i];
+            if (command.m_canceled) {
+                continue;
+            }
+
+            if (!enabled && !command.runsWhenDisabled()) {
+                endCommand(command, true);
+                continue;
+            }
+
+            command.execute();
+            if (!command.m_canceled && command.isFinished()) {
+                endCommand(command, false);
+            }
+        }
+        finishOperation();
+    }
+
+    /**
+     * Gets the bitmask of every mechanism required by a scheduled command.
+     *
+     * @return the requirements currently in use
+     */
+    public long getRequirementsInUse() {
+        return m_requirementsInUse;
+    }
+
+    /**
+     * Gets the number of scheduled commands.
+     *
+     * @return the number of scheduled commands
+     */
+    public int getScheduledCount() {
+        return m_commandCount;
+    }
+
+    private void endCommand(LiteCommand command, boolean interrupted) {
+        command.m_canceled = true;
+        command.end(interrupted);
+    }
+
+    /**
+     * Ends a run, schedule or cancel. Once the outermost one ends, the ended commands are removed
+     * and the commands scheduled in the meantime are scheduled in order.
+     */
+    private void finishOperation() {
+        m_depth--;
+        if (m_depth > 0) {
+            return;
+        }
+
+        compact();
+        // Scheduling may end commands that schedule more, which are appended and run here too
+        while (m_pendingCount > 0) {
+            var command = m_pending[0];
+            removePending(0);
+            schedule(command);
+        }
+    }
+
+    private int indexOfPending(LiteCommand command) {
+        for (int i = 0; i < m_pendingCount; i++) {
+            if (m_pending[i] == command) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removePending(int index) {
+        m_pendingCount--;
+        for (int i = index; i < m_pendingCount; i++) {
+            m_pending[i] = m_pending[i + 1];
+        }
+        m_pending[m_pendingCount] = null;
+    }
+
+    private void clearPending() {
+        for (int i = 0; i < m_pendingCount; i++) {
+            m_pending[i] = null;
+        }
+        m_pendingCount = 0;
+    }
+
+    /** Removes ended commands while keeping the remaining commands in scheduling order. */
+    private void compact() {
+        int kept = 0;
+        long requirements = 0;
+        for (int i = 0; i < m_commandCount; i++) {
+            var command = m_commands[i];
+            if (command.m_canceled) {
+                command.m_runner = null;
+                command.m_canceled = false;
+                continue;
+            }
+            requirements |= command.getRequirements();
+            m_commands[kept++] = command;
+        }
+        for (int i = kept; i < m_commandCount; i++) {
+            m_commands[i] = null;
+        }
+        m_commandCount = kept;
+        m_requirementsInUse = requirements;
+    }
+}
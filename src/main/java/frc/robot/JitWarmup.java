@@ -0,0 +1,297 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot;
+
+import frc.library.CurrentSpikeDetector;
+import frc.library.RobotRunnerBase;
+import frc.library.TalonFxRegistry;
+import frc.library.TimestampedValue;
+import frc.library.command.LiteCommand;
+import frc.library.command.LiteCommandRunner;
+import frc.robot.logging.LogBuilder;
+import frc.robot.subsystems.collectorrollers.CollectorRollersHalI;
+import frc.robot.subsystems.elevator.rollers.ElevatorRollersHalI;
+import frc.robot.subsystems.feeder.FeederRollersHalI;
+import frc.robot.subsystems.intake.rollers.IntakeRollersHalI;
+import frc.robot.subsystems.serializer.SerializerRollersHalI;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+import org.growingstems.frc.util.WpiTimeSource;
+import org.growingstems.measurements.Measurements.AngularVelocity;
+import org.growingstems.measurements.Measurements.Current;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.measurements.Measurements.Voltage;
+import org.growingstems.util.timer.Timer;
+
+/**
+ * Runs the hot paths of the robot code while disabled so they are JIT compiled before autonomous
+ * starts. Exercises the robot's own roller HALs, the log entries returned by {@link
+ * LogBuilder#makeSyncLogEntry} with the types the HALs and profilers log, current spike detection
+ * and the lite command runner. The HALs refresh and sample their signals and log any new frames as
+ * usual, but their control requests are held back with {@link
+ * TalonFxRegistry#setControlSuppressed}, so no control frames are sent to the motors. The warm-up's
+ * own log entries come from {@link LogBuilder#makeDiscardedLogEntry}, so they don't add to the log
+ * or write a file. The values passed in are made up front, so warming up doesn't allocate.
+ *
+ * <p>Warm-up is complete once the JIT's total compilation time stops growing. After that the main
+ * loop execution time is measured for a while and reported, to confirm the loop is at steady state.
+ */
+public class JitWarmup {
+    private static final int k_iterationsPerLoop = 200;
+    private static final Time k_samplePeriod = Time.seconds(0.5);
+    private static final Time k_plateauCompilationTime = Time.milliseconds(5.0);
+    private static final int k_plateauSamples = 3;
+    // Used when the JVM can't report compilation time
+    private static final int k_fallbackIterations = 20000;
+    private static final int k_reportLoops = 250;
+    private static final int k_valueCount = 100;
+
+    private final RobotRunnerBase m_runner;
+    private final CompilationMXBean m_compilationBean;
+    private final Timer m_sampleTimer;
+    private final Timer m_warmupTimer;
+
+    // The robot's HALs, real on the robot
+    private final TalonFxRegistry m_talonFxRegistry;
+    private final IntakeRollersHalI m_intake;
+    private final CollectorRollersHalI m_collector;
+    private final SerializerRollersHalI m_serializer;
+    private final FeederRollersHalI m_feeder;
+    private final ElevatorRollersHalI m_elevator;
+
+    // Stand-ins
+    private final CurrentSpikeDetector m_spikeDetector = new CurrentSpikeDetector(
+            Current.amps(10.0), Current.amps(5.0), Time.milliseconds(20.0), Time.seconds(0.5));
+    private final LiteCommandRunner m_commandRunner = new LiteCommandRunner(2);
+    private final LiteCommand m_command;
+
+    // Logging
+    private final Consumer<TimestampedValue> m_logPower;
+    private final Consumer<TimestampedValue> m_logCurrent;
+    private final Consumer<Time> m_logTime;
+    private final Consumer<Double> m_logDouble;
+    private final Consumer<Integer> m_logInteger;
+    private final Sample m_sample = new Sample();
+
+    // Made up front, so iterations don't allocate
+    private final Voltage[] m_powers = new Voltage[k_valueCount];
+    private final AngularVelocity[] m_velocities = new AngularVelocity[k_valueCount];
+    private final Time[] m_times = new Time[k_valueCount];
+    private final Double[] m_doubles = new Double[k_valueCount];
+
+    private long m_lastCompilationTime_ms = -1;
+    private int m_plateauCount = 0;
+    private long m_iterations = 0;
+    private boolean m_complete = false;
+
+    private int m_reportedLoops = 0;
+    private double m_loopTimeSum_ms = 0.0;
+    private double m_loopTimeMax_ms = 0.0;
+
+    public JitWarmup(RobotRunnerBase runner, LogBuilder builder, Robot robot) {
+        m_runner = runner;
+        m_talonFxRegistry = robot.getTalonFxRegistry();
+        m_intake = robot.getIntakeRollers();
+        m_collector = robot.getCollectorRollers();
+        m_serializer = robot.getSerializerRollers();
+        m_feeder = robot.getFeederRollers();
+        m_elevator = robot.getElevatorRollers();
+
+        var compilationBean = ManagementFactory.getCompilationMXBean();
+        m_compilationBean = compilationBean != null
+                        && compilationBean.isCompilationTimeMonitoringSupported()
+                ? compilationBean
+                : null;
+
+        var ts = new WpiTimeSource();
+        m_sampleTimer = ts.createTimer();
+        m_sampleTimer.start();
+        m_warmupTimer = ts.createTimer();
+        m_warmupTimer.start();
+
+        for (int i = 0; i < k_valueCount; i++) {
+            double x = i * 0.1;
+            m_powers[i] = Voltage.volts(x);
+            m_velocities[i] = AngularVelocity.revolutionsPerMinute(x * 100.0);
+            m_times[i] = Time.milliseconds(x);
+            m_doubles[i] = x;
+        }
+
+        // The same types as the HALs and profilers log, discarded once encoded
+        m_logPower = builder.makeDiscardedLogEntry(builder.timestampedVoltageType_volts);
+        m_logCurrent = builder.makeDiscardedLogEntry(builder.timestampedCurrentType_amps);
+        m_logTime = builder.makeDiscardedLogEntry(builder.timeType_ms);
+        m_logDouble = builder.makeDiscardedLogEntry(builder.doubleType);
+        m_logInteger = builder.makeDiscardedLogEntry(builder.integerType);
+
+        m_command = new LiteCommand("JIT Warm-up", LiteCommandRunner.requirement(0)) {
+            @Override
+            public void execute() {}
+
+            @Override
+            public boolean runsWhenDisabled() {
+                return true;
+            }
+        };
+    }
+
+    /** Runs a batch of warm-up iterations, or measures loop times once warm. Call while disabled. */
+    public void update() {
+        if (m_complete) {
+            reportLoopTime();
+            return;
+        }
+
+        for (int i = 0; i < k_iterationsPerLoop; i++) {
+            runIteration();
+        }
+
+        if (m_sampleTimer.hasElapsed(k_samplePeriod)) {
+            m_sampleTimer.reset();
+            checkComplete();
+        }
+    }
+
+    private void runIteration() {
+        int index = (int) (m_iterations % k_valueCount);
+        double x = index * 0.1;
+        var power = m_powers[index];
+        var velocity = m_velocities[index];
+
+        // Nothing is sent to the motors until the HALs are back to the coast they are left in
+        // while disabled
+        m_talonFxRegistry.setControlSuppressed(true);
+        m_intake.refreshSignals();
+        m_intake.update();
+        m_intake.setPower(power);
+        m_intake.setVelocity(velocity);
+        m_collector.refreshSignals();
+        m_collector.update();
+        m_collector.setPower(power);
+        m_collector.setVelocity(velocity);
+        m_serializer.refreshSignals();
+        m_serializer.update();
+        m_serializer.setPower(power);
+        m_serializer.setVelocity(velocity);
+        m_feeder.refreshSignals();
+        m_feeder.update();
+        m_feeder.setPower(power);
+        m_feeder.setVelocity(velocity);
+        m_elevator.refreshSignals();
+        m_elevator.update();
+        m_elevator.setPower(power);
+        m_elevator.setVelocity(velocity);
+        m_intake.getStatorCurrent_A();
+        m_intake.getStatorCurrentTimestamp_s();
+        m_feeder.getStatorCurrent_A();
+        m_feeder.getStatorCurrentTimestamp_s();
+        m_intake.coast();
+        m_collector.coast();
+        m_serializer.coast();
+        m_feeder.coast();
+        m_elevator.coast();
+        m_talonFxRegistry.setControlSuppressed(false);
+
+        // Synthetic samples, the motors are stopped so their currents are flat
+        m_spikeDetector.update(x * 3.0, m_iterations * 0.01);
+
+        logIteration(index, x);
+
+        if (!m_command.isScheduled()) {
+            m_commandRunner.schedule(m_command);
+        }
+        m_commandRunner.run(false);
+        if (m_iterations % 10 == 0) {
+            m_commandRunner.cancel(m_command);
+        }
+
+        m_iterations++;
+    }
+
+    private void logIteration(int index, double x) {
+        m_sample.value = x;
+        m_sample.timestamp_s = m_iterations * 0.01;
+        m_logPower.accept(m_sample);
+        m_logCurrent.accept(m_sample);
+        m_logTime.accept(m_times[index]);
+        m_logDouble.accept(m_doubles[index]);
+        // Small enough to be boxed from the Integer cache
+        m_logInteger.accept(index);
+    }
+
+    private void checkComplete() {
+        if (m_compilationBean == null) {
+            if (m_iterations >= k_fallbackIterations) {
+                finish();
+            }
+            return;
+        }
+
+        long compilationTime_ms = m_compilationBean.getTotalCompilationTime();
+        if (m_lastCompilationTime_ms >= 0
+                && compilationTime_ms - m_lastCompilationTime_ms
+                        < k_plateauCompilationTime.asMilliseconds()) {
+            m_plateauCount++;
+        } else {
+            m_plateauCount = 0;
+        }
+        m_lastCompilationTime_ms = compilationTime_ms;
+
+        if (m_plateauCount >= k_plateauSamples) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        m_complete = true;
+        m_commandRunner.cancelAll();
+        System.out.printf(
+                "********** JIT warm-up complete after %.1f s, %d iterations **********%n",
+                m_warmupTimer.get().asSeconds(), m_iterations);
+    }
+
+    private void reportLoopTime() {
+        if (m_reportedLoops >= k_reportLoops) {
+            return;
+        }
+
+        double loopTime_ms = m_runner.getMainExecutionTime().asMilliseconds();
+        m_loopTimeSum_ms += loopTime_ms;
+        m_loopTimeMax_ms = Math.max(m_loopTimeMax_ms, loopTime_ms);
+        m_reportedLoops++;
+
+        if (m_reportedLoops == k_reportLoops) {
+            System.out.printf(
+                    "Post warm-up main execution: %.3f ms mean, %.3f ms max over %d loops%n",
+                    m_loopTimeSum_ms / k_reportLoops, m_loopTimeMax_ms, k_reportLoops);
+        }
+    }
+
+    /**
+     * Whether the hot paths have finished compiling.
+     *
+     * @return true once warm-up is complete
+     */
+    public boolean isComplete() {
+        return m_complete;
+    }
+
+    /** A logged sample, updated in place. */
+    private static class Sample implements TimestampedValue {
+        private double value = 0.0;
+        private double timestamp_s = 0.0;
+
+        @Override
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public double getTimestamp_s() {
+            return timestamp_s;
+        }
+    }
+}
@@ -4,23 +4,215 @@
 
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.library.NeutralModeOrchestrator;
+import frc.library.ParallelUpdateStage;
+import frc.library.TalonFxRegistry;
+import frc.library.command.LiteCommandRunner;
+import frc.robot.devices.CanBusMonitor;
+import frc.robot.devices.DegradedModeManager;
+import frc.robot.devices.PowerBudgetManager;
+import frc.robot.devices.TalonFxHealthMonitor;
+import frc.robot.logging.LogBuilder;
+import frc.robot.subsystems.SubsystemRegistry;
+import frc.robot.subsystems.collectorrollers.CollectorRollersDummyHal;
+import frc.robot.subsystems.collectorrollers.CollectorRollersHal;
+import frc.robot.subsystems.collectorrollers.CollectorRollersHalI;
+import frc.robot.subsystems.elevator.rollers.ElevatorRollersDummyHal;
+import frc.robot.subsystems.elevator.rollers.ElevatorRollersHal;
+import frc.robot.subsystems.elevator.rollers.ElevatorRollersHalI;
+import frc.robot.subsystems.feeder.FeederRollersDummyHal;
+import frc.robot.subsystems.feeder.FeederRollersHal;
+import frc.robot.subsystems.feeder.FeederRollersHalI;
+import frc.robot.subsystems.handoff.GamePieceHandoff;
+import frc.robot.subsystems.handoff.GamePieceHandoff.State;
+import frc.robot.subsystems.intake.rollers.IntakeRollersDummyHal;
+import frc.robot.subsystems.intake.rollers.IntakeRollersHal;
+import frc.robot.subsystems.intake.rollers.IntakeRollersHalI;
+import frc.robot.subsystems.serializer.SerializerRollersDummyHal;
+import frc.robot.subsystems.serializer.SerializerRollersHal;
+import frc.robot.subsystems.serializer.SerializerRollersHalI;
+import java.util.function.BooleanSupplier;
 
 public class Robot {
     public static final String k_canivoreCan = "CANivore";
 
+    // Runs the preallocated commands of the roller chain, alongside the CommandScheduler
+    private final LiteCommandRunner m_liteCommandRunner;
+    // Every TalonFX HAL registers its motor here
+    private final TalonFxRegistry m_talonFxRegistry = new TalonFxRegistry();
+    // Every HAL with a startup neutral mode registers here, it is switched on disable and enable
+    private final NeutralModeOrchestrator m_neutralModeOrchestrator;
+    // Every HAL's update runs through here, so its allocation and time are accounted for
+    private final SubsystemRegistry m_subsystemRegistry;
+
+    // Devices
+    private final CanBusMonitor m_canBusMonitor;
+    private final PowerBudgetManager m_powerBudgetManager;
+    private final TalonFxHealthMonitor m_talonFxHealthMonitor;
+    private final DegradedModeManager m_degradedModeManager;
+
+    // Roller Chain
+    private final IntakeRollersHalI m_intakeRollers;
+    private final CollectorRollersHalI m_collectorRollers;
+    private final SerializerRollersHalI m_serializerRollers;
+    private final FeederRollersHalI m_feederRollers;
+    private final ElevatorRollersHalI m_elevatorRollers;
+    private final GamePieceHandoff m_gamePieceHandoff;
+
+    // Bindings
+    private BooleanSupplier m_intakeTrigger;
+
     private Command m_autoCommand = null;
 
-    public Robot() {
+    public Robot(
+            LogBuilder builder,
+            LiteCommandRunner liteCommandRunner,
+            NeutralModeOrchestrator neutralModeOrchestrator,
+            ParallelUpdateStage parallelUpdateStage) {
+        m_liteCommandRunner = liteCommandRunner;
+        m_neutralModeOrchestrator = neutralModeOrchestrator;
+        m_subsystemRegistry = new SubsystemRegistry(builder);
+
+        // ----------
+        //    HALs
+        // ----------
+        // The dummy HALs stand in when there is no hardware to talk to, and for the class data
+        // sharing training run, see build.gradle
+        if (RobotBase.isReal() && !RobotRunner.isCdsTraining()) {
+            m_intakeRollers = new IntakeRollersHal(builder, m_talonFxRegistry);
+            m_collectorRollers = new CollectorRollersHal(builder, m_talonFxRegistry);
+            m_serializerRollers = new SerializerRollersHal(builder, m_talonFxRegistry);
+            m_feederRollers = new FeederRollersHal(builder, m_talonFxRegistry);
+            m_elevatorRollers = new ElevatorRollersHal(builder, m_talonFxRegistry);
+        } else {
+            m_intakeRollers = new IntakeRollersDummyHal();
+            m_collectorRollers = new CollectorRollersDummyHal();
+            m_serializerRollers = new SerializerRollersDummyHal();
+            m_feederRollers = new FeederRollersDummyHal();
+            m_elevatorRollers = new ElevatorRollersDummyHal();
+        }
+
+        // The signal reads only read the CAN bus and write their own HAL, so they all run in
+        // parallel. Logging isn't thread safe, so it stays in the serial updates below.
+        long canivore = parallelUpdateStage.addResource(k_canivoreCan);
+        parallelUpdateStage.addTask(
+                "Intake Rollers",
+                canivore,
+                parallelUpdateStage.addResource("Intake Rollers"),
+                m_intakeRollers::refreshSignals);
+        parallelUpdateStage.addTask(
+                "Collector Rollers",
+                canivore,
+                parallelUpdateStage.addResource("Collector Rollers"),
+                m_collectorRollers::refreshSignals);
+        parallelUpdateStage.addTask(
+                "Serializer Rollers",
+                canivore,
+                parallelUpdateStage.addResource("Serializer Rollers"),
+                m_serializerRollers::refreshSignals);
+        parallelUpdateStage.addTask(
+                "Feeder Rollers",
+                canivore,
+                parallelUpdateStage.addResource("Feeder Rollers"),
+                m_feederRollers::refreshSignals);
+        parallelUpdateStage.addTask(
+                "Elevator Rollers",
+                canivore,
+                parallelUpdateStage.addResource("Elevator Rollers"),
+                m_elevatorRollers::refreshSignals);
+
+        m_subsystemRegistry.register("Intake Rollers", m_intakeRollers::update);
+        m_subsystemRegistry.register("Collector Rollers", m_collectorRollers::update);
+        m_subsystemRegistry.register("Serializer Rollers", m_serializerRollers::update);
+        m_subsystemRegistry.register("Feeder Rollers", m_feederRollers::update);
+        m_subsystemRegistry.register("Elevator Rollers", m_elevatorRollers::update);
+
+        m_neutralModeOrchestrator.register(m_intakeRollers);
+        m_neutralModeOrchestrator.register(m_collectorRollers);
+        m_neutralModeOrchestrator.register(m_serializerRollers);
+        m_neutralModeOrchestrator.register(m_feederRollers);
+        m_neutralModeOrchestrator.register(m_elevatorRollers);
+
+        // -------------
+        //    Devices
+        // -------------
+        // Created once every TalonFX is registered, so every motor on the bus is managed
+        m_canBusMonitor = new CanBusMonitor(builder, k_canivoreCan, m_talonFxRegistry);
+        m_powerBudgetManager = new PowerBudgetManager(builder, m_talonFxRegistry);
+        m_talonFxHealthMonitor = new TalonFxHealthMonitor(builder, m_talonFxRegistry);
+        m_degradedModeManager =
+                new DegradedModeManager(builder, m_talonFxRegistry, m_canBusMonitor);
+
+        // Moves a game piece through the roller chain, scheduled on the lite command runner by the
+        // intake binding
+        m_gamePieceHandoff = new GamePieceHandoff(
+                builder,
+                m_intakeRollers,
+                m_collectorRollers,
+                m_serializerRollers,
+                m_feederRollers,
+                m_elevatorRollers);
+
         configureBindings();
     }
 
-    public void update() {}
+    public void update() {
+        // Advances the diagnostics log rate group, so it goes before anything is logged
+        m_degradedModeManager.update();
+        m_subsystemRegistry.update();
+        m_canBusMonitor.update();
+        m_powerBudgetManager.update();
+        m_talonFxHealthMonitor.update();
+        updateBindings();
+    }
 
-    private void configureBindings() {}
+    private void configureBindings() {
+        // Intake whenever the robot is driving without a piece. Test mode is left to the motor
+        // characterization.
+        m_intakeTrigger = () -> {
+            boolean driving =
+                    DriverStation.isAutonomousEnabled() || DriverStation.isTeleopEnabled();
+            return driving && m_gamePieceHandoff.getState() == State.IDLE;
+        };
+    }
+
+    private void updateBindings() {
+        // Polled every loop rather than scheduled once from a mode init. The runner refuses the
+        // command until it has run enabled, so the first enabled loop is retried on the next one.
+        if (m_intakeTrigger.getAsBoolean()) {
+            m_liteCommandRunner.schedule(m_gamePieceHandoff.getCommand());
+        }
+    }
 
     public void updateAutoCommand() {}
 
+    public TalonFxRegistry getTalonFxRegistry() {
+        return m_talonFxRegistry;
+    }
+
+    public IntakeRollersHalI getIntakeRollers() {
+        return m_intakeRollers;
+    }
+
+    public CollectorRollersHalI getCollectorRollers() {
+        return m_collectorRollers;
+    }
+
+    public SerializerRollersHalI getSerializerRollers() {
+        return m_serializerRollers;
+    }
+
+    public FeederRollersHalI getFeederRollers() {
+        return m_feederRollers;
+    }
+
+    public ElevatorRollersHalI getElevatorRollers() {
+        return m_elevatorRollers;
+    }
+
     public Command getAutonomousUCommand() {
         if (m_autoCommand == null) {
             updateAutoCommand();
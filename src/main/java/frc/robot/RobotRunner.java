@@ -5,21 +5,66 @@
 package frc.robot;
 
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.library.RobotRunnerBase;
+import frc.library.command.LiteCommandRunner;
+import frc.robot.devices.MotorCharacterization;
+import frc.robot.logging.CommandProfiler;
+import frc.robot.logging.JvmMetricsLogger;
+import frc.robot.logging.LogBuilder;
+import frc.robot.logging.LogNamer;
+import frc.robot.logging.LogRetentionManager;
+import frc.robot.logging.LogSessionManager;
+import frc.robot.logging.LogSyncScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.growingstems.frc.util.WpiTimeSource;
 import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.timer.Timer;
 
 public class RobotRunner extends RobotRunnerBase {
     private static final Time k_maxDesiredLoopTime = Time.milliseconds(20.0);
-
+    private static final int k_liteCommandCapacity = 16;
+    // Set by the startup optimized build's training deploy, see build.gradle
+    private static final boolean k_cdsTraining = Boolean.getBoolean("frc.cdsTraining");
+    private static final Time k_cdsTrainingDuration = Time.seconds(30.0);
+    // The command the NI robot daemon runs, and restarts whenever the program exits
+    private static final Path k_robotCommand = Path.of("/home/lvuser/robotCommand");
+
+    private final LiteCommandRunner m_liteCommandRunner = new LiteCommandRunner(k_liteCommandCapacity);
+    private LogBuilder m_logBuilder;
+    private JvmMetricsLogger m_jvmMetricsLogger;
+    private CommandProfiler m_commandProfiler;
+    private LogSyncScheduler m_logSyncScheduler;
+    private LogRetentionManager m_logRetentionManager;
+    private LogNamer m_logNamer;
+    private LogSessionManager m_logSessionManager;
     private Robot m_robot;
     private Command m_autonomousCommand;
+    private JitWarmup m_jitWarmup;
+    private MotorCharacterization m_characterization;
+    private Timer m_cdsTrainingTimer;
 
     public static boolean isCompetition() {
         return false;
     }
 
+    /**
+     * Checks whether this is a class data sharing training run, which boots against the dummy
+     * HALs.
+     *
+     * @return true if training
+     */
+    public static boolean isCdsTraining() {
+        return k_cdsTraining;
+    }
+
     public RobotRunner() {
         CommandScheduler.getInstance().setPeriod(k_maxDesiredLoopTime.asSeconds());
         DriverStation.silenceJoystickConnectionWarning(true);
@@ -27,20 +72,90 @@ public class RobotRunner extends RobotRunnerBase {
 
     @Override
     public void robotInit() {
-        m_robot = new Robot();
+        m_logBuilder = LogBuilder.create();
+        m_jvmMetricsLogger = new JvmMetricsLogger(m_logBuilder, this);
+        m_commandProfiler = new CommandProfiler(m_logBuilder);
+        m_logSyncScheduler = new LogSyncScheduler(m_logBuilder, this);
+        m_logRetentionManager = new LogRetentionManager(m_logBuilder);
+        m_logNamer = new LogNamer(m_logBuilder);
+        m_logSessionManager = new LogSessionManager(m_logBuilder);
+        scheduleLogCommands();
+        m_robot = new Robot(
+                m_logBuilder,
+                m_liteCommandRunner,
+                getNeutralModeOrchestrator(),
+                getParallelUpdateStage());
+        m_jitWarmup = new JitWarmup(this, m_logBuilder, m_robot);
+        m_characterization = new MotorCharacterization(
+                m_robot.getTalonFxRegistry(),
+                new File(Filesystem.getOperatingDirectory(), "characterization.txt"));
+
+        if (k_cdsTraining) {
+            // The robot stays disabled, so the JIT warm-up loads the dummy HAL classes into the
+            // archive
+            System.out.println("********** Class data sharing training run **********");
+            m_cdsTrainingTimer = new WpiTimeSource().createTimer();
+            m_cdsTrainingTimer.start();
+        }
     }
 
     @Override
     public void robotPeriodic() {
-        CommandScheduler.getInstance().run();
+        m_robot.update();
+        m_commandProfiler.run();
+        m_liteCommandRunner.run(DriverStation.isEnabled());
+        m_jvmMetricsLogger.update();
+
+        if (k_cdsTraining && m_cdsTrainingTimer.hasElapsed(k_cdsTrainingDuration)) {
+            finishCdsTraining();
+        }
+    }
+
+    /**
+     * Ends the class data sharing training run. The robot daemon restarts the program as soon as it
+     * exits, so the training flags are first swapped in the robot command for the flags that use
+     * the archive. Otherwise the program would be restarted to train again, rebuilding the archive
+     * every 30 seconds until the next deploy.
+     */
+    private void finishCdsTraining() {
+        if (RobotBase.isReal()) {
+            try {
+                String command = Files.readString(k_robotCommand);
+                String trained = command
+                        .replace(" -Dfrc.cdsTraining=true", "")
+                        .replace(
+                                "-XX:ArchiveClassesAtExit=",
+                                "-Xshare:auto -XX:SharedArchiveFile=");
+                var partial = k_robotCommand.resolveSibling(k_robotCommand.getFileName() + ".tmp");
+                Files.writeString(partial, trained);
+                // The daemon runs the command file itself, so it must stay executable
+                Files.setPosixFilePermissions(
+                        partial, Files.getPosixFilePermissions(k_robotCommand));
+                Files.move(partial, k_robotCommand, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.out.println("Failed to clear the training flags: " + e.getMessage());
+            }
+        }
+
+        // A clean exit rather than returning from startCompetition(), which is reported as an
+        // unexpected return. The JVM writes the class data sharing archive as it exits.
+        System.out.println("********** Class data sharing training complete **********");
+        System.exit(0);
     }
 
     @Override
-    public void disabledInit() {}
+    public void disabledInit() {
+        // Created once startup is over
+        m_logBuilder.publishBandwidthOnRequest();
+        // Kept up to date at the end of every enabled period, in case power is cut later. This runs
+        // between autonomous and teleop too, so the file is written on the sync thread.
+        m_logSyncScheduler.submit(m_logBuilder::writeBandwidthSummary);
+    }
 
     @Override
     public void disabledPeriodic() {
         m_robot.updateAutoCommand();
+        m_jitWarmup.update();
     }
 
     @Override
@@ -48,6 +163,7 @@ public class RobotRunner extends RobotRunnerBase {
 
     @Override
     public void autonomousInit() {
+        m_commandProfiler.startMatch();
         m_autonomousCommand = m_robot.getAutonomousUCommand();
 
         if (m_autonomousCommand != null) {
@@ -72,18 +188,44 @@ public class RobotRunner extends RobotRunnerBase {
     public void teleopPeriodic() {}
 
     @Override
-    public void teleopExit() {}
+    public void teleopExit() {
+        m_commandProfiler.endMatch();
+    }
 
     @Override
     public void testInit() {
         CommandScheduler.getInstance().cancelAll();
+        scheduleLogCommands();
+        m_liteCommandRunner.cancelAll();
+        m_characterization.start();
+    }
+
+    @Override
+    public void testPeriodic() {
+        m_characterization.update();
     }
 
     @Override
-    public void testPeriodic() {}
+    public void testExit() {
+        m_characterization.stop();
+    }
+
+    /** Schedules the commands that name and split the log, they run for the whole program. */
+    private void scheduleLogCommands() {
+        // The namer finishes once the log is named after the match, so isn't scheduled again
+        if (!m_logNamer.isFinished()) {
+            m_logNamer.schedule();
+        }
+        m_logSessionManager.schedule();
+    }
 
     @Override
-    public void testExit() {}
+    protected void sleepInit() {
+        // Between loops, so a log segment's entries all start in the same loop
+        m_logBuilder.moveToOpenedSegment();
+        // Wakes the sync thread so the fsync overlaps with the main thread's sleep
+        m_logSyncScheduler.update();
+    }
 
     @Override
     protected void emergencyStopInit() {}
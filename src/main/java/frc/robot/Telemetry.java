@@ -5,32 +5,182 @@
 package frc.robot;
 
 import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.wpilibj.shuffleboard.BuiltInWidgets;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 
 public class Telemetry {
+    private static boolean nonEssentialPaused = false;
+
+    /**
+     * Pauses or resumes publishing of non-essential telemetry, i.e. allocation and logging
+     * statistics. Used to shed network and CPU load.
+     *
+     * @param paused true to stop publishing non-essential telemetry
+     */
+    public static void setNonEssentialPaused(boolean paused) {
+        nonEssentialPaused = paused;
+    }
+
+    /**
+     * Whether non-essential telemetry should be skipped this loop.
+     *
+     * @return true if non-essential telemetry is paused
+     */
+    public static boolean isNonEssentialPaused() {
+        return nonEssentialPaused;
+    }
+
     // -------------------
     //    General Robot
     // -------------------
     public static class TeleRobot {
-        private static final ShuffleboardTab robotTab = Shuffleboard.getTab("Robot");
+        // Widgets are created on first use so that loading the class doesn't touch Shuffleboard
+        private static GenericEntry logFile = null;
+        private static GenericEntry loggedBytes = null;
+        private static GenericEntry loggedKBPerSecond = null;
+        private static GenericEntry loggedTotalBytesKB = null;
+        private static GenericEntry logBandwidthRequest = null;
+        private static GenericEntry logBandwidthSummary = null;
+
+        private static ShuffleboardTab getTab() {
+            return Shuffleboard.getTab("Robot");
+        }
+
+        public static GenericEntry getLogFile() {
+            if (logFile == null) {
+                logFile = getTab().add("Log File", "Unset").withPosition(5, 0).withSize(2, 1).getEntry();
+            }
+            return logFile;
+        }
+
+        public static GenericEntry getLoggedBytes() {
+            if (loggedBytes == null) {
+                loggedBytes =
+                        getTab().add("Bytes per Frame", 0).withPosition(4, 1).withSize(1, 1).getEntry();
+            }
+            return loggedBytes;
+        }
+
+        public static GenericEntry getLoggedKBPerSecond() {
+            if (loggedKBPerSecond == null) {
+                loggedKBPerSecond = getTab()
+                        .add("Bytes per Second (kBps)", 0)
+                        .withPosition(5, 1)
+                        .withSize(2, 1)
+                        .getEntry();
+            }
+            return loggedKBPerSecond;
+        }
 
-        public static final GenericEntry logFile =
-                robotTab.add("Log File", "Unset").withPosition(5, 0).withSize(2, 1).getEntry();
+        public static GenericEntry getLoggedTotalBytesKB() {
+            if (loggedTotalBytesKB == null) {
+                loggedTotalBytesKB = getTab()
+                        .add("Total Bytes Logged (kB)", 0)
+                        .withPosition(5, 2)
+                        .withSize(2, 1)
+                        .getEntry();
+            }
+            return loggedTotalBytesKB;
+        }
 
-        public static final GenericEntry loggedBytes =
-                robotTab.add("Bytes per Frame", 0).withPosition(4, 1).withSize(1, 1).getEntry();
+        public static GenericEntry getLogBandwidthRequest() {
+            if (logBandwidthRequest == null) {
+                logBandwidthRequest = getTab()
+                        .add("Dump Log Bandwidth", false)
+                        .withWidget(BuiltInWidgets.kToggleButton)
+                        .withPosition(4, 2)
+                        .withSize(1, 1)
+                        .getEntry();
+            }
+            return logBandwidthRequest;
+        }
+
+        public static GenericEntry getLogBandwidthSummary() {
+            if (logBandwidthSummary == null) {
+                logBandwidthSummary = getTab()
+                        .add("Log Bandwidth", new String[0])
+                        .withPosition(7, 0)
+                        .withSize(4, 3)
+                        .getEntry();
+            }
+            return logBandwidthSummary;
+        }
+    }
+
+    // ----------------
+    //    Allocation
+    // ----------------
+    public static class TeleAllocation {
+        private static GenericEntry robotPeriodicBytes = null;
+        private static GenericEntry modePeriodicBytes = null;
+
+        private static ShuffleboardTab getTab() {
+            return Shuffleboard.getTab("Allocation");
+        }
+
+        public static GenericEntry getRobotPeriodicBytes() {
+            if (robotPeriodicBytes == null) {
+                robotPeriodicBytes = getTab()
+                        .add("Robot Periodic (B per Loop)", 0)
+                        .withPosition(0, 0)
+                        .withSize(2, 1)
+                        .getEntry();
+            }
+            return robotPeriodicBytes;
+        }
+
+        public static GenericEntry getModePeriodicBytes() {
+            if (modePeriodicBytes == null) {
+                modePeriodicBytes = getTab()
+                        .add("Mode Periodic (B per Loop)", 0)
+                        .withPosition(2, 0)
+                        .withSize(2, 1)
+                        .getEntry();
+            }
+            return modePeriodicBytes;
+        }
+
+        /**
+         * Adds a widget for a subsystem's allocated bytes per loop. Subsystems are laid out in rows
+         * below the main thread totals in the order they are added.
+         *
+         * @param name The name of the subsystem
+         * @param index The order the subsystem was added in
+         * @return The entry to publish the subsystem's allocated bytes to
+         */
+        public static GenericEntry addSubsystem(String name, int index) {
+            return getTab()
+                    .add(name + " (B per Loop)", 0)
+                    .withPosition((index % 4) * 2, 1 + index / 4)
+                    .withSize(2, 1)
+                    .getEntry();
+        }
+    }
 
-        public static final GenericEntry loggedKBPerSecond = robotTab
-                .add("Bytes per Second (kBps)", 0)
-                .withPosition(5, 1)
-                .withSize(2, 1)
-                .getEntry();
+    // ------------
+    //    Health
+    // ------------
+    public static class TeleHealth {
+        private static ShuffleboardTab getTab() {
+            return Shuffleboard.getTab("Health");
+        }
 
-        public static final GenericEntry loggedTotalBytesKB = robotTab
-                .add("Total Bytes Logged (kB)", 0)
-                .withPosition(5, 2)
-                .withSize(2, 1)
-                .getEntry();
+        /**
+         * Adds an indicator for whether a device is healthy. Devices are laid out in rows in the
+         * order they are added.
+         *
+         * @param name The name of the device
+         * @param index The order the device was added in
+         * @return The entry to publish the device's health to
+         */
+        public static GenericEntry addDevice(String name, int index) {
+            return getTab()
+                    .add(name, true)
+                    .withWidget(BuiltInWidgets.kBooleanBox)
+                    .withPosition(index % 8, index / 8)
+                    .withSize(1, 1)
+                    .getEntry();
+        }
     }
 }
@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.devices;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.CANBus.CANBusStatus;
+import frc.library.TalonFxRegistry;
+import frc.robot.logging.LogBuilder;
+import java.util.function.Consumer;
+import org.growingstems.frc.util.WpiTimeSource;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.timer.Timer;
+
+/**
+ * Periodically samples the status of a CAN bus and logs it. When the bus gets busy, either from high
+ * utilization or from the transmit buffer filling up, the low priority signals of every registered
+ * TalonFX on the bus are slowed down so that control signals are not starved. They are restored
+ * once the bus has been quiet for a while.
+ */
+public class CanBusMonitor {
+    private static final Time k_samplePeriod = Time.seconds(0.25);
+    private static final Time k_quietTimeToRestore = Time.seconds(2.0);
+    private static final double k_busyUtilization = 0.8;
+    private static final double k_quietUtilization = 0.6;
+
+    private final String m_busName;
+    private final TalonFxRegistry m_registry;
+    private final Timer m_sampleTimer;
+    private final Timer m_quietTimer;
+
+    private int m_lastTxFullCount = -1;
+    private boolean m_busy = false;
+    private boolean m_forceReduced = false;
+    private boolean m_reduced = false;
+
+    // Logging
+    private final Consumer<CANBusStatus> m_logStatus;
+    private final Consumer<Integer> m_logReduced;
+
+    public CanBusMonitor(LogBuilder builder, String busName, TalonFxRegistry registry) {
+        m_busName = busName;
+        m_registry = registry;
+
+        var ts = new WpiTimeSource();
+        m_sampleTimer = ts.createTimer();
+        m_sampleTimer.start();
+        m_quietTimer = ts.createTimer();
+        m_quietTimer.start();
+
+        // -------------
+        //    Logging
+        // -------------
+        m_logStatus = builder.makeSyncLogEntry(
+                "CAN/" + busName + "/Status", builder.getCanBusStatusType());
+        m_logReduced = builder.makeSyncLogEntry(
+                "CAN/" + busName + "/Low Priority Signals Reduced", builder.integerType);
+    }
+
+    /** Samples the bus if the sample period has elapsed. Call once per loop. */
+    public void update() {
+        if (!m_sampleTimer.hasElapsed(k_samplePeriod)) {
+            return;
+        }
+        m_sampleTimer.reset();
+
+        var status = CANBus.getStatus(m_busName);
+        m_logStatus.accept(status);
+        if (!status.Status.isOK()) {
+            return;
+        }
+
+        boolean txFullIncreased = m_lastTxFullCount >= 0 && status.TxFullCount > m_lastTxFullCount;
+        m_lastTxFullCount = status.TxFullCount;
+
+        boolean busy = txFullIncreased || status.BusUtilization > k_busyUtilization;
+        if (busy || status.BusUtilization > k_quietUtilization) {
+            m_quietTimer.reset();
+        }
+
+        if (busy) {
+            m_busy = true;
+        } else if (m_busy && m_quietTimer.hasElapsed(k_quietTimeToRestore)) {
+            m_busy = false;
+        }
+        applyReduced();
+    }
+
+    /**
+     * Forces the low priority signals to be reduced regardless of how busy the bus is, i.e. to
+     * shed load during a brownout.
+     *
+     * @param forceReduced true to keep the signals reduced
+     */
+    public void setForceReduced(boolean forceReduced) {
+        m_forceReduced = forceReduced;
+        applyReduced();
+    }
+
+    private void applyReduced() {
+        boolean reduced = m_busy || m_forceReduced;
+        if (reduced != m_reduced) {
+            setReduced(reduced);
+        }
+    }
+
+    /**
+     * Whether the low priority signals are currently reduced.
+     *
+     * @return true if reduced
+     */
+    public boolean isReduced() {
+        return m_reduced;
+    }
+
+    private void setReduced(boolean reduced) {
+        m_reduced = reduced;
+        m_logReduced.accept(reduced ? 1 : 0);
+        for (var device : m_registry.getDevices()) {
+            if (!device.getMotor().getNetwork().equals(m_busName)) {
+                continue;
+            }
+
+            for (var group : device.getLowPrioritySignals()) {
+                BaseStatusSignal.setUpdateFrequencyForAll(
+                        reduced ? group.getReducedFrequency_Hz() : group.getNominalFrequency_Hz(),
+                        group.getSignals());
+            }
+        }
+    }
+}
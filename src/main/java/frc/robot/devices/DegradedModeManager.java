@@ -0,0 +1,116 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.devices;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.library.TalonFxRegistry;
+import frc.robot.Telemetry;
+import frc.robot.logging.LogBuilder;
+import frc.robot.logging.LogRateGroup;
+import java.util.function.Consumer;
+import org.growingstems.frc.util.WpiTimeSource;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.measurements.Measurements.Voltage;
+import org.growingstems.util.timer.Timer;
+
+/**
+ * Puts the robot into a degraded mode when the battery browns out or sags below a threshold, so
+ * that CPU, CAN and electrical load are shed together instead of the roboRIO rebooting mid match.
+ * While degraded:
+ *
+ * <ul>
+ *   <li>the diagnostics log rate group is slowed down
+ *   <li>non-essential telemetry is paused
+ *   <li>low priority CAN signals are reduced
+ *   <li>open loop roller outputs are scaled down
+ * </ul>
+ *
+ * The robot leaves degraded mode once the battery has recovered for a while.
+ */
+public class DegradedModeManager {
+    private static final Voltage k_enterVoltage = Voltage.volts(7.5);
+    private static final Voltage k_exitVoltage = Voltage.volts(9.0);
+    private static final Time k_recoveryTime = Time.seconds(2.0);
+    private static final int k_degradedLogDivisor = 5;
+    private static final double k_degradedOutputScale = 0.75;
+
+    private final LogRateGroup m_diagnosticsRateGroup;
+    private final TalonFxRegistry m_registry;
+    private final CanBusMonitor m_canBusMonitor;
+    private final Timer m_recoveryTimer;
+
+    private boolean m_degraded = false;
+
+    // Logging
+    private final Consumer<Integer> m_logDegraded;
+    private final Consumer<Voltage> m_logBatteryVoltage;
+
+    public DegradedModeManager(
+            LogBuilder builder, TalonFxRegistry registry, CanBusMonitor canBusMonitor) {
+        m_diagnosticsRateGroup = builder.diagnosticsRateGroup;
+        m_registry = registry;
+        m_canBusMonitor = canBusMonitor;
+
+        m_recoveryTimer = new WpiTimeSource().createTimer();
+        m_recoveryTimer.start();
+
+        // -------------
+        //    Logging
+        // -------------
+        m_logDegraded = builder.makeSyncLogEntry("Degraded Mode/Active", builder.integerType);
+        m_logBatteryVoltage =
+                builder.makeSyncLogEntry("Degraded Mode/Battery Voltage", builder.voltageType_volts);
+    }
+
+    /**
+     * Checks the battery and enters or leaves degraded mode. Also advances the diagnostics log rate
+     * group, so it must be called once per loop before anything else is logged.
+     */
+    public void update() {
+        m_diagnosticsRateGroup.update();
+
+        double batteryVoltage_V = RobotController.getBatteryVoltage();
+        boolean low = RobotController.isBrownedOut() || batteryVoltage_V < k_enterVoltage.asVolts();
+        if (low || batteryVoltage_V < k_exitVoltage.asVolts()) {
+            m_recoveryTimer.reset();
+        }
+
+        if (low && !m_degraded) {
+            setDegraded(true);
+        } else if (m_degraded && m_recoveryTimer.hasElapsed(k_recoveryTime)) {
+            setDegraded(false);
+        }
+
+        if (m_degraded) {
+            m_logBatteryVoltage.accept(Voltage.volts(batteryVoltage_V));
+        }
+    }
+
+    /**
+     * Whether the robot is currently shedding load.
+     *
+     * @return true if degraded
+     */
+    public boolean isDegraded() {
+        return m_degraded;
+    }
+
+    private void setDegraded(boolean degraded) {
+        m_degraded = degraded;
+        m_logDegraded.accept(degraded ? 1 : 0);
+
+        m_diagnosticsRateGroup.setDivisor(degraded ? k_degradedLogDivisor : 1);
+        Telemetry.setNonEssentialPaused(degraded);
+        m_canBusMonitor.setForceReduced(degraded);
+        m_registry.setOutputScale(degraded ? k_degradedOutputScale : 1.0);
+
+        if (degraded) {
+            DriverStation.reportWarning("Low battery, entering degraded mode", false);
+        } else {
+            System.out.println("Battery recovered, leaving degraded mode");
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.devices;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.SignalLogger;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.controls.NeutralOut;
+import com.ctre.phoenix6.controls.VoltageOut;
+import com.ctre.phoenix6.hardware.TalonFX;
+import frc.library.TalonFxRegistry;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import org.growingstems.frc.util.WpiTimeSource;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.timer.Timer;
+
+/**
+ * Characterizes every registered TalonFX one after the other, for use in test mode. Each motor is
+ * run through a quasi-static voltage ramp followed by a dynamic voltage step, while a capture
+ * thread reads its voltage, velocity and acceleration at {@value #k_captureFrequency_Hz} Hz using
+ * the device timestamps. The samples are fit to {@code V = kS * sign(v) + kV * v + kA * a} by least
+ * squares, giving gains in the units of the TalonFX's slot configs, and the results are appended to
+ * a file.
+ *
+ * <p>The fit is accumulated on the capture thread as the samples arrive, so no samples are stored
+ * and the main loop only steps the voltage. Only samples from the ramp and the step are used, the
+ * motor coasting down during the rests isn't driven by the applied voltage. The capture thread also
+ * sets the signal update frequencies, which waits on the CAN bus. {@link SignalLogger} runs during
+ * the routine so the raw 1 kHz signals can be inspected afterwards.
+ */
+public class MotorCharacterization {
+    private static final double k_captureFrequency_Hz = 1000.0;
+    private static final double k_rampRate_Vps = 1.0;
+    private static final double k_maxRampVoltage_V = 7.0;
+    private static final double k_stepVoltage_V = 6.0;
+    private static final Time k_stepDuration = Time.seconds(2.0);
+    private static final Time k_restDuration = Time.seconds(2.0);
+    // Samples slower than this are dropped, since the direction of kS is unknown near zero
+    private static final double k_minVelocity_rps = 0.1;
+    private static final double k_captureTimeout_s = 0.02;
+
+    private enum Phase {
+        QUASI_STATIC,
+        QUASI_STATIC_REST,
+        DYNAMIC,
+        DYNAMIC_REST,
+    }
+
+    /** Reads one motor's signals at a high rate and accumulates the least squares fit. */
+    private static class Capture implements Runnable {
+        private final String m_name;
+        private final File m_outputFile;
+        private final StatusSignal<Double> m_voltage;
+        private final StatusSignal<Double> m_velocity;
+        private final StatusSignal<Double> m_acceleration;
+        private final BaseStatusSignal[] m_signals;
+        private final double[] m_previousFrequencies_Hz;
+        private volatile boolean m_running = true;
+        // Set while the motor is driven by the routine's voltage
+        private volatile boolean m_recording = false;
+
+        // Normal equations of the fit, with x = [sign(v), v, a] and y = V
+        private final double[][] m_xtx = new double[3][3];
+        private final double[] m_xty = new double[3];
+        private double m_yty = 0.0;
+        private double m_sumY = 0.0;
+        private int m_sampleCount = 0;
+
+        Capture(String name, TalonFX motor, File outputFile) {
+            m_name = name;
+            m_outputFile = outputFile;
+            // Clones, so the HAL's copies of these signals aren't refreshed from two threads
+            m_voltage = motor.getMotorVoltage().clone();
+            m_velocity = motor.getVelocity().clone();
+            m_acceleration = motor.getAcceleration().clone();
+            m_signals = new BaseStatusSignal[] {m_voltage, m_velocity, m_acceleration};
+            m_previousFrequencies_Hz = new double[m_signals.length];
+
+            var thread = new Thread(this, name + " Characterization");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            // Set here rather than by the main thread, since each call waits for the device
+            for (int i = 0; i < m_signals.length; i++) {
+                m_previousFrequencies_Hz[i] = m_signals[i].getAppliedUpdateFrequency();
+            }
+            BaseStatusSignal.setUpdateFrequencyForAll(k_captureFrequency_Hz, m_signals);
+
+            double lastTimestamp_s = Double.NaN;
+            while (m_running) {
+                var status = BaseStatusSignal.waitForAll(k_captureTimeout_s, m_signals);
+                if (!status.isOK() || !m_recording) {
+                    continue;
+                }
+
+                // Skip repeats when the wait returned before a new frame arrived
+                double timestamp_s = m_velocity.getTimestamp().getTime();
+                if (timestamp_s == lastTimestamp_s) {
+                    continue;
+                }
+                lastTimestamp_s = timestamp_s;
+
+                double velocity_rps = m_velocity.getValue();
+                if (Math.abs(velocity_rps) < k_minVelocity_rps) {
+                    continue;
+                }
+                addSample(
+                        Math.signum(velocity_rps),
+                        velocity_rps,
+                        m_acceleration.getValue(),
+                        m_voltage.getValue());
+            }
+
+            for (int i = 0; i < m_signals.length; i++) {
+                m_signals[i].setUpdateFrequency(m_previousFrequencies_Hz[i]);
+            }
+            writeResult();
+        }
+
+        private void addSample(double x0, double x1, double x2, double voltage_V) {
+            m_xtx[0][0] += x0 * x0;
+            m_xtx[0][1] += x0 * x1;
+            m_xtx[0][2] += x0 * x2;
+            m_xtx[1][1] += x1 * x1;
+            m_xtx[1][2] += x1 * x2;
+            m_xtx[2][2] += x2 * x2;
+            m_xty[0] += x0 * voltage_V;
+            m_xty[1] += x1 * voltage_V;
+            m_xty[2] += x2 * voltage_V;
+            m_yty += voltage_V * voltage_V;
+            m_sumY += voltage_V;
+            m_sampleCount++;
+        }
+
+        private void writeResult() {
+            m_xtx[1][0] = m_xtx[0][1];
+            m_xtx[2][0] = m_xtx[0][2];
+            m_xtx[2][1] = m_xtx[1][2];
+            var gains = solve(m_xtx, m_xty);
+
+            String result;
+            if (gains == null) {
+                result = String.format("%s: fit failed, %d samples", m_name, m_sampleCount);
+            } else {
+                result = String.format(
+                        "%s: kS = %.4f V, kV = %.4f V/rps, kA = %.4f V/(rps/s), r^2 = %.4f, "
+                                + "%d samples",
+                        m_name, gains[0], gains[1], gains[2], getRSquared(gains), m_sampleCount);
+            }
+
+            System.out.println(result);
+            try (var writer = new FileWriter(m_outputFile, true)) {
+                writer.write(result + System.lineSeparator());
+            } catch (IOException e) {
+                System.out.println(
+                        "Failed to write characterization of " + m_name + ": " + e.getMessage());
+            }
+        }
+
+        private double getRSquared(double[] gains) {
+            if (m_sampleCount == 0) {
+                return Double.NaN;
+            }
+
+            // SSE = y'y - 2 b'X'y + b'X'Xb, computed from the accumulated sums
+            double bxty = 0.0;
+            double bxtxb = 0.0;
+            for (int i = 0; i < 3; i++) {
+                bxty += gains[i] * m_xty[i];
+                for (int j = 0; j < 3; j++) {
+                    bxtxb += gains[i] * m_xtx[i][j] * gains[j];
+                }
+            }
+            double sse = m_yty - 2.0 * bxty + bxtxb;
+
+            double sst = m_yty - m_sumY * m_sumY / m_sampleCount;
+            return sst > 0.0 ? 1.0 - sse / sst : Double.NaN;
+        }
+
+        void setRecording(boolean recording) {
+            m_recording = recording;
+        }
+
+        void stop() {
+            m_running = false;
+        }
+    }
+
+    private final List<TalonFxRegistry.Device> m_devices;
+    private final File m_outputFile;
+    private final VoltageOut m_voltageRequest = new VoltageOut(0.0);
+    private final NeutralOut m_neutralRequest = new NeutralOut();
+    private final Timer m_phaseTimer = new WpiTimeSource().createTimer();
+
+    private boolean m_running = false;
+    private int m_deviceIndex = 0;
+    private Phase m_phase = Phase.QUASI_STATIC;
+    private Capture m_capture = null;
+
+    /**
+     * Creates the characterization routine.
+     *
+     * @param registry The registry of the motors to characterize
+     * @param outputFile The file the fitted gains are appended to
+     */
+    public MotorCharacterization(TalonFxRegistry registry, File outputFile) {
+        m_devices = registry.getDevices();
+        m_outputFile = outputFile;
+        m_phaseTimer.start();
+    }
+
+    /** Starts characterizing from the first registered motor. Call from test init. */
+    public void start() {
+        stop();
+        m_deviceIndex = 0;
+        m_running = !m_devices.isEmpty();
+        if (m_running) {
+            SignalLogger.start();
+            startDevice();
+        }
+    }
+
+    /** Steps the voltage of the motor being characterized. Call from test periodic. */
+    public void update() {
+        if (!m_running) {
+            return;
+        }
+
+        var motor = m_devices.get(m_deviceIndex).getMotor();
+        double elapsed_s = m_phaseTimer.get().asSeconds();
+        switch (m_phase) {
+            case QUASI_STATIC:
+                double voltage_V = elapsed_s * k_rampRate_Vps;
+                if (voltage_V >= k_maxRampVoltage_V) {
+                    setPhase(Phase.QUASI_STATIC_REST);
+                    motor.setControl(m_neutralRequest);
+                } else {
+                    motor.setControl(m_voltageRequest.withOutput(voltage_V));
+                }
+                break;
+            case QUASI_STATIC_REST:
+                if (m_phaseTimer.hasElapsed(k_restDuration)) {
+                    setPhase(Phase.DYNAMIC);
+                    motor.setControl(m_voltageRequest.withOutput(k_stepVoltage_V));
+                }
+                break;
+            case DYNAMIC:
+                if (m_phaseTimer.hasElapsed(k_stepDuration)) {
+                    setPhase(Phase.DYNAMIC_REST);
+                    motor.setControl(m_neutralRequest);
+                }
+                break;
+            case DYNAMIC_REST:
+                if (m_phaseTimer.hasElapsed(k_restDuration)) {
+                    // The capture thread fits and writes the result
+                    m_capture.stop();
+                    m_capture = null;
+                    m_deviceIndex++;
+                    if (m_deviceIndex < m_devices.size()) {
+                        startDevice();
+                    } else {
+                        m_running = false;
+                        SignalLogger.stop();
+                    }
+                }
+                break;
+        }
+    }
+
+    /** Stops the routine and the motor being characterized. Call from test exit. */
+    public void stop() {
+        if (!m_running) {
+            return;
+        }
+
+        m_devices.get(m_deviceIndex).getMotor().setControl(m_neutralRequest);
+        if (m_capture != null) {
+            m_capture.stop();
+            m_capture = null;
+        }
+        m_running = false;
+        SignalLogger.stop();
+    }
+
+    /**
+     * Gets whether every motor has been characterized or the routine was stopped.
+     *
+     * @return true if no characterization is running
+     */
+    public boolean isComplete() {
+        return !m_running;
+    }
+
+    private void startDevice() {
+        var device = m_devices.get(m_deviceIndex);
+        m_capture = new Capture(device.getName(), device.getMotor(), m_outputFile);
+        setPhase(Phase.QUASI_STATIC);
+    }
+
+    private void setPhase(Phase phase) {
+        m_phase = phase;
+        m_phaseTimer.reset();
+        m_capture.setRecording(phase == Phase.QUASI_STATIC || phase == Phase.DYNAMIC);
+        SignalLogger.writeString(
+                "Characterization/Phase", m_devices.get(m_deviceIndex).getName() + " " + phase);
+    }
+
+    /**
+     * Solves a 3x3 linear system with Gaussian elimination and partial pivoting.
+     *
+     * @return the solution, or null if the system is singular
+     */
+    private static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+        double[][] m = new double[n][n + 1];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, m[i], 0, n);
+            m[i][n] = b[i];
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(m[pivot][col]) < 1.0e-12) {
+                return null;
+            }
+            var swap = m[col];
+            m[col] = m[pivot];
+            m[pivot] = swap;
+
+            for (int row = col + 1; row < n; row++) {
+                double factor = m[row][col] / m[col][col];
+                for (int k = col; k <= n; k++) {
+                    m[row][k] -= factor * m[col][k];
+                }
+            }
+        }
+
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = m[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= m[row][k] * x[k];
+            }
+            x[row] = sum / m[row][row];
+        }
+        return x;
+    }
+}
@@ -0,0 +1,208 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.devices;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.configs.CurrentLimitsConfigs;
+import com.ctre.phoenix6.configs.TalonFXConfigurator;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.library.TalonFxRegistry;
+import frc.robot.logging.LogBuilder;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import org.growingstems.measurements.Measurements.Current;
+import org.growingstems.measurements.Measurements.Temperature;
+import org.growingstems.measurements.Measurements.Voltage;
+
+/**
+ * Shares a total supply current budget between every registered TalonFX that has current limits.
+ * Each loop the live supply currents and battery voltage are read, the budget is shrunk as the
+ * battery sags, and the budget is split between devices in proportion to how much current they are
+ * drawing. No device gets less than a minimum or more than its configured limit. A device drawing
+ * close to its current limit is seen as wanting its whole configured limit, so a roller starting
+ * from rest gets its share right away instead of creeping up from the minimum.
+ *
+ * <p>The most a device may draw is also derated as it heats up, from its configured limit at
+ * {@link #k_deratingStartTemperature} down to the minimum at {@link #k_deratingEndTemperature}.
+ *
+ * <p>New limits are only sent to a device when they change by more than a threshold. Raised limits
+ * are sent straight away, lowered limits not more often than a minimum period, so the configurator
+ * traffic on the CAN bus stays low.
+ */
+public class PowerBudgetManager {
+    private static final Current k_totalSupplyBudget = Current.amps(80.0);
+    private static final Current k_minimumSupplyBudget = Current.amps(40.0);
+    private static final Current k_minimumDeviceLimit = Current.amps(10.0);
+    private static final Voltage k_budgetSagStartVoltage = Voltage.volts(10.5);
+    private static final Voltage k_budgetSagEndVoltage = Voltage.volts(8.0);
+    private static final Current k_applyThreshold = Current.amps(2.0);
+    private static final long k_minimumApplyPeriod_us = 250_000;
+    // Leaves headroom so a device running at its limit is seen as wanting more current
+    private static final double k_demandHeadroom = 1.2;
+    // A device drawing this fraction of its limit is limited by it and wants its whole limit
+    private static final double k_saturatedFraction = 0.9;
+    private static final Temperature k_deratingStartTemperature = Temperature.celsius(70.0);
+    // Matches the overheat temperature of the TalonFxHealthMonitor
+    private static final Temperature k_deratingEndTemperature = Temperature.celsius(90.0);
+
+    private static class BudgetedDevice {
+        final TalonFXConfigurator configurator;
+        final StatusSignal<Double> supplyCurrent;
+        final StatusSignal<Double> deviceTemp;
+        final double maxLimit_A;
+        final CurrentLimitsConfigs config = new CurrentLimitsConfigs();
+        final Consumer<Current> logLimit;
+
+        double demand_A = 0.0;
+        double deratedLimit_A;
+        double targetLimit_A;
+        double appliedLimit_A;
+        long lastApply_us = 0;
+
+        BudgetedDevice(LogBuilder builder, TalonFxRegistry.Device device) {
+            var motor = device.getMotor();
+            configurator = motor.getConfigurator();
+            supplyCurrent = motor.getSupplyCurrent();
+            deviceTemp = motor.getDeviceTemp();
+            maxLimit_A = device.getSupplyCurrentLimit().asAmps();
+            deratedLimit_A = maxLimit_A;
+            targetLimit_A = maxLimit_A;
+            appliedLimit_A = maxLimit_A;
+
+            // Matches how the HALs configure their current limits
+            config.SupplyCurrentLimitEnable = true;
+            config.SupplyCurrentLimit = maxLimit_A;
+            config.StatorCurrentLimit = device.getStatorCurrentLimit().asAmps();
+
+            var name = "Power/" + device.getName() + "/Supply Current Limit";
+            logLimit = builder.makeSyncLogEntry(name, builder.currentType_amps);
+        }
+    }
+
+    private final LogBuilder m_builder;
+    private final TalonFxRegistry m_registry;
+    private final ArrayList<BudgetedDevice> m_devices = new ArrayList<>();
+    private BaseStatusSignal[] m_batchSignals = new BaseStatusSignal[0];
+    private int m_registeredDeviceCount = 0;
+
+    // Logging
+    private final Consumer<Current> m_logBudget;
+    private final Consumer<Current> m_logTotalSupplyCurrent;
+
+    public PowerBudgetManager(LogBuilder builder, TalonFxRegistry registry) {
+        m_builder = builder;
+        m_registry = registry;
+
+        m_logBudget = builder.makeSyncLogEntry("Power/Supply Budget", builder.currentType_amps);
+        m_logTotalSupplyCurrent =
+                builder.makeSyncLogEntry("Power/Total Supply Current", builder.currentType_amps);
+
+        addNewDevices();
+    }
+
+    private void addNewDevices() {
+        var registered = m_registry.getDevices();
+        if (registered.size() == m_registeredDeviceCount) {
+            return;
+        }
+
+        for (int i = m_registeredDeviceCount; i < registered.size(); i++) {
+            var device = registered.get(i);
+            if (device.getSupplyCurrentLimit() != null) {
+                m_devices.add(new BudgetedDevice(m_builder, device));
+            }
+        }
+        m_registeredDeviceCount = registered.size();
+
+        m_batchSignals = new BaseStatusSignal[m_devices.size() * 2];
+        for (int i = 0; i < m_devices.size(); i++) {
+            var device = m_devices.get(i);
+            m_batchSignals[i * 2] = device.supplyCurrent;
+            m_batchSignals[i * 2 + 1] = device.deviceTemp;
+        }
+    }
+
+    /** Redistributes the supply current budget. Call once per loop. */
+    public void update() {
+        addNewDevices();
+        if (m_devices.isEmpty()) {
+            return;
+        }
+
+        BaseStatusSignal.refreshAll(m_batchSignals);
+        double budget_A = getBudget_A(RobotController.getBatteryVoltage());
+
+        // Everyone gets the minimum, the rest is shared by demand
+        double totalSupply_A = 0.0;
+        double totalDemand_A = 0.0;
+        for (int i = 0; i < m_devices.size(); i++) {
+            var device = m_devices.get(i);
+            double supply_A = Math.abs(device.supplyCurrent.getValueAsDouble());
+            totalSupply_A += supply_A;
+            device.deratedLimit_A = getDeratedLimit_A(device);
+
+            double wanted_A = supply_A >= device.appliedLimit_A * k_saturatedFraction
+                    ? device.deratedLimit_A
+                    : supply_A * k_demandHeadroom;
+            device.demand_A = Math.max(wanted_A - k_minimumDeviceLimit.asAmps(), 0.0);
+            totalDemand_A += device.demand_A;
+        }
+
+        double minimumTotal_A = m_devices.size() * k_minimumDeviceLimit.asAmps();
+        double shareable_A = Math.max(budget_A - minimumTotal_A, 0.0);
+        for (int i = 0; i < m_devices.size(); i++) {
+            var device = m_devices.get(i);
+            double share_A = totalDemand_A > 0.0
+                    ? shareable_A * device.demand_A / totalDemand_A
+                    : shareable_A / m_devices.size();
+            device.targetLimit_A =
+                    Math.min(k_minimumDeviceLimit.asAmps() + share_A, device.deratedLimit_A);
+            applyIfChanged(device);
+        }
+
+        m_logBudget.accept(Current.amps(budget_A));
+        m_logTotalSupplyCurrent.accept(Current.amps(totalSupply_A));
+    }
+
+    private double getBudget_A(double batteryVoltage_V) {
+        double sagStart_V = k_budgetSagStartVoltage.asVolts();
+        double sagEnd_V = k_budgetSagEndVoltage.asVolts();
+        double fraction = (batteryVoltage_V - sagEnd_V) / (sagStart_V - sagEnd_V);
+        fraction = Math.max(0.0, Math.min(1.0, fraction));
+        double min_A = k_minimumSupplyBudget.asAmps();
+        return min_A + (k_totalSupplyBudget.asAmps() - min_A) * fraction;
+    }
+
+    private static double getDeratedLimit_A(BudgetedDevice device) {
+        double start_C = k_deratingStartTemperature.asCelsius();
+        double end_C = k_deratingEndTemperature.asCelsius();
+        double fraction = (end_C - device.deviceTemp.getValueAsDouble()) / (end_C - start_C);
+        fraction = Math.max(0.0, Math.min(1.0, fraction));
+        double min_A = k_minimumDeviceLimit.asAmps();
+        return min_A + (device.maxLimit_A - min_A) * fraction;
+    }
+
+    private void applyIfChanged(BudgetedDevice device) {
+        if (Math.abs(device.targetLimit_A - device.appliedLimit_A) < k_applyThreshold.asAmps()) {
+            return;
+        }
+
+        // A device that needs more current gets it now, only reductions are held back
+        long now_us = WPIUtilJNI.now();
+        boolean lowering = device.targetLimit_A < device.appliedLimit_A;
+        if (lowering && now_us - device.lastApply_us < k_minimumApplyPeriod_us) {
+            return;
+        }
+
+        device.config.SupplyCurrentLimit = device.targetLimit_A;
+        // Don't wait for the device to acknowledge, this runs in the main loop
+        device.configurator.apply(device.config, 0.0);
+        device.appliedLimit_A = device.targetLimit_A;
+        device.lastApply_us = now_us;
+        device.logLimit.accept(Current.amps(device.appliedLimit_A));
+    }
+}
@@ -0,0 +1,230 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.devices;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.hardware.TalonFX;
+import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.library.TalonFxRegistry;
+import frc.robot.Telemetry.TeleHealth;
+import frc.robot.logging.LogBuilder;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.growingstems.measurements.Measurements.Temperature;
+import org.growingstems.measurements.Measurements.Time;
+
+/**
+ * Watches the faults and temperature of every TalonFX in a {@link TalonFxRegistry}. The fault
+ * fields and device temperature of all devices are refreshed in a single batch each loop, so the
+ * cost stays constant regardless of how many checks are made. The individual fault flags are only
+ * read to decode a fault field when it changes.
+ *
+ * <p>Log events, driver station warnings and dashboard alerts are only raised when a device's
+ * health changes, not every loop.
+ */
+public class TalonFxHealthMonitor {
+    private static final Temperature k_overheatTemperature = Temperature.celsius(90.0);
+    private static final Time k_overheatWarningTime = Time.seconds(60.0);
+    private static final double k_temperatureSlopeTimeConstant_s = 5.0;
+
+    private static record Fault(String name, Function<TalonFX, StatusSignal<Boolean>> signal) {}
+
+    private static final Fault[] k_faults = {
+        new Fault("Hardware", TalonFX::getFault_Hardware),
+        new Fault("Processor Temperature", TalonFX::getFault_ProcTemp),
+        new Fault("Device Temperature", TalonFX::getFault_DeviceTemp),
+        new Fault("Undervoltage", TalonFX::getFault_Undervoltage),
+        new Fault("Boot During Enable", TalonFX::getFault_BootDuringEnable),
+        new Fault("Bridge Brownout", TalonFX::getFault_BridgeBrownout),
+        new Fault("Over Supply Voltage", TalonFX::getFault_OverSupplyV),
+        new Fault("Unstable Supply Voltage", TalonFX::getFault_UnstableSupplyV),
+        new Fault("Stator Current Limit", TalonFX::getFault_StatorCurrLimit),
+        new Fault("Supply Current Limit", TalonFX::getFault_SupplyCurrLimit),
+        new Fault("Unlicensed Feature In Use", TalonFX::getFault_UnlicensedFeatureInUse)
+    };
+
+    private static class MonitoredDevice {
+        final String name;
+        final StatusSignal<Integer> faultField;
+        final StatusSignal<Integer> stickyFaultField;
+        final StatusSignal<Double> deviceTemp;
+        final StatusSignal<Boolean>[] faults;
+        final boolean[] activeFaults = new boolean[k_faults.length];
+
+        final Consumer<Integer> logFaultField;
+        final Consumer<Integer> logStickyFaultField;
+        final Consumer<Temperature> logDeviceTemp;
+        final Consumer<Time> logTimeToOverheat;
+        final GenericEntry dashboardHealthy;
+
+        int lastFaultField = 0;
+        int lastStickyFaultField = 0;
+        double lastTemp_C = Double.NaN;
+        double lastTempTimestamp_s = 0.0;
+        double tempSlope_CperS = 0.0;
+        boolean overheating = false;
+
+        @SuppressWarnings("unchecked")
+        MonitoredDevice(LogBuilder builder, TalonFxRegistry.Device device, int index) {
+            name = device.getName();
+            var motor = device.getMotor();
+            faultField = motor.getFaultField();
+            stickyFaultField = motor.getStickyFaultField();
+            deviceTemp = motor.getDeviceTemp();
+
+            faults = new StatusSignal[k_faults.length];
+            for (int i = 0; i < k_faults.length; i++) {
+                faults[i] = k_faults[i].signal().apply(motor);
+            }
+            // Same rate as the fault field so decoding never reads a stale flag
+            BaseStatusSignal.setUpdateFrequencyForAll(4, faults);
+
+            var prefix = "Health/" + name;
+            logFaultField = builder.makeSyncLogEntry(prefix + "/Fault Field", builder.integerType);
+            logStickyFaultField =
+                    builder.makeSyncLogEntry(prefix + "/Sticky Fault Field", builder.integerType);
+            logDeviceTemp = builder.makeSyncLogEntry(
+                    prefix + "/Device Temperature", builder.temperatureType_celsius);
+            logTimeToOverheat =
+                    builder.makeSyncLogEntry(prefix + "/Time to Overheat", builder.timeType_s);
+            dashboardHealthy = TeleHealth.addDevice(name, index);
+        }
+
+        boolean isHealthy() {
+            return lastFaultField == 0 && !overheating;
+        }
+    }
+
+    private final LogBuilder m_builder;
+    private final TalonFxRegistry m_registry;
+    private final ArrayList<MonitoredDevice> m_devices = new ArrayList<>();
+    private BaseStatusSignal[] m_batchSignals = new BaseStatusSignal[0];
+
+    public TalonFxHealthMonitor(LogBuilder builder, TalonFxRegistry registry) {
+        m_builder = builder;
+        m_registry = registry;
+        addNewDevices();
+    }
+
+    /** Picks up devices registered since the last call and rebuilds the batch of signals. */
+    private void addNewDevices() {
+        var registered = m_registry.getDevices();
+        if (registered.size() == m_devices.size()) {
+            return;
+        }
+
+        for (int i = m_devices.size(); i < registered.size(); i++) {
+            m_devices.add(new MonitoredDevice(m_builder, registered.get(i), i));
+        }
+
+        m_batchSignals = new BaseStatusSignal[m_devices.size() * 3];
+        for (int i = 0; i < m_devices.size(); i++) {
+            var device = m_devices.get(i);
+            m_batchSignals[i * 3] = device.faultField;
+            m_batchSignals[i * 3 + 1] = device.stickyFaultField;
+            m_batchSignals[i * 3 + 2] = device.deviceTemp;
+        }
+    }
+
+    /** Checks the health of every device. Call once per loop. */
+    public void update() {
+        addNewDevices();
+        if (m_batchSignals.length == 0) {
+            return;
+        }
+
+        BaseStatusSignal.refreshAll(m_batchSignals);
+        for (int i = 0; i < m_devices.size(); i++) {
+            var device = m_devices.get(i);
+            boolean wasHealthy = device.isHealthy();
+
+            updateFaults(device);
+            updateTemperature(device);
+
+            boolean healthy = device.isHealthy();
+            if (healthy != wasHealthy) {
+                device.dashboardHealthy.setBoolean(healthy);
+            }
+        }
+    }
+
+    private void updateFaults(MonitoredDevice device) {
+        int stickyFaultField = device.stickyFaultField.getValue();
+        if (stickyFaultField != device.lastStickyFaultField) {
+            device.lastStickyFaultField = stickyFaultField;
+            device.logStickyFaultField.accept(stickyFaultField);
+        }
+
+        int faultField = device.faultField.getValue();
+        if (faultField == device.lastFaultField) {
+            return;
+        }
+        device.lastFaultField = faultField;
+        device.logFaultField.accept(faultField);
+
+        // Decode which faults changed
+        BaseStatusSignal.refreshAll(device.faults);
+        for (int i = 0; i < k_faults.length; i++) {
+            boolean active = device.faults[i].getValue();
+            if (active == device.activeFaults[i]) {
+                continue;
+            }
+
+            device.activeFaults[i] = active;
+            var message =
+                    device.name + " fault " + (active ? "set: " : "cleared: ") + k_faults[i].name();
+            if (active) {
+                DriverStation.reportWarning(message, false);
+            } else {
+                System.out.println(message);
+            }
+        }
+    }
+
+    private void updateTemperature(MonitoredDevice device) {
+        double timestamp_s = device.deviceTemp.getTimestamp().getTime();
+        if (timestamp_s <= device.lastTempTimestamp_s) {
+            // Only 4 Hz, nothing new
+            return;
+        }
+
+        double temp_C = device.deviceTemp.getValueAsDouble();
+        if (!Double.isNaN(device.lastTemp_C)) {
+            double dt_s = timestamp_s - device.lastTempTimestamp_s;
+            double slope = (temp_C - device.lastTemp_C) / dt_s;
+            double alpha = dt_s / (k_temperatureSlopeTimeConstant_s + dt_s);
+            device.tempSlope_CperS += alpha * (slope - device.tempSlope_CperS);
+        }
+        device.lastTemp_C = temp_C;
+        device.lastTempTimestamp_s = timestamp_s;
+        device.logDeviceTemp.accept(Temperature.celsius(temp_C));
+
+        double remaining_C = k_overheatTemperature.asCelsius() - temp_C;
+        double timeToOverheat_s = Double.POSITIVE_INFINITY;
+        if (remaining_C <= 0.0) {
+            timeToOverheat_s = 0.0;
+        } else if (device.tempSlope_CperS > 0.0) {
+            timeToOverheat_s = remaining_C / device.tempSlope_CperS;
+        }
+        if (Double.isFinite(timeToOverheat_s)) {
+            device.logTimeToOverheat.accept(Time.seconds(timeToOverheat_s));
+        }
+
+        boolean overheating = timeToOverheat_s < k_overheatWarningTime.asSeconds();
+        if (overheating != device.overheating) {
+            device.overheating = overheating;
+            if (overheating) {
+                var message =
+                        device.name + " will overheat in " + Math.round(timeToOverheat_s) + " s";
+                DriverStation.reportWarning(message, false);
+            } else {
+                System.out.println(device.name + " is no longer overheating");
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import org.growingstems.measurements.Measurements.Time;
+
+/**
+ * Breaks the cost of {@link CommandScheduler#run()} down per command. Attaches to the scheduler's
+ * initialize, execute, interrupt and finish hooks and attributes the time since the previous hook
+ * to the command that triggered it. The scheduler runs every subsystem's {@code periodic()} before
+ * polling the default button loop, so a marker bound to that loop measures the subsystem periodic
+ * block as a whole.
+ *
+ * <p>Since the scheduler calls {@code isFinished()} after the execute hook, a command's {@code
+ * isFinished()} is counted towards the next command in the loop. Likewise, triggers bound after
+ * this profiler is created are counted towards the first command. Both are typically negligible.
+ *
+ * <p>Use {@link #run()} in place of calling {@link CommandScheduler#run()} directly. Call {@link
+ * #startMatch()} and {@link #endMatch()} around a match to get a summary of the top {@value
+ * #k_topCommandCount} costliest commands.
+ */
+public class CommandProfiler {
+    private static final int k_topCommandCount = 5;
+
+    private class CommandStats {
+        final String name;
+        final Consumer<Time> logLoopTime;
+        final Consumer<Time> logMatchTotal;
+        final Consumer<Time> logMatchMax;
+        final Consumer<Integer> logMatchRuns;
+        final Consumer<Integer> logMatchRank;
+        long loopTime_us = 0;
+        long matchTotal_us = 0;
+        long matchMax_us = 0;
+        int matchRuns = 0;
+        boolean ranThisLoop = false;
+
+        CommandStats(String name) {
+            this.name = name;
+            var prefix = "Profiler/Commands/" + name;
+            logLoopTime = m_builder.makeSyncLogEntry(prefix + "/Loop Time", m_builder.timeType_ms);
+            logMatchTotal =
+                    m_builder.makeSyncLogEntry(prefix + "/Match Total", m_builder.timeType_ms);
+            logMatchMax = m_builder.makeSyncLogEntry(prefix + "/Match Max", m_builder.timeType_ms);
+            logMatchRuns = m_builder.makeSyncLogEntry(prefix + "/Match Runs", m_builder.integerType);
+            logMatchRank = m_builder.makeSyncLogEntry(prefix + "/Match Rank", m_builder.integerType);
+        }
+    }
+
+    private final LogBuilder m_builder;
+    private final HashMap<Command, CommandStats> m_stats = new HashMap<>();
+    // Kept alongside the map to iterate without creating an iterator every loop
+    private final ArrayList<CommandStats> m_statsList = new ArrayList<>();
+
+    private boolean m_inRun = false;
+    private boolean m_subsystemsDone = false;
+    private long m_runStart_us = 0;
+    private long m_lastMark_us = 0;
+    private long m_subsystemTime_us = 0;
+    private long m_commandTime_us = 0;
+
+    // Logging
+    private final Consumer<Time> m_logSubsystemTime;
+    private final Consumer<Time> m_logCommandTime;
+    private final Consumer<Time> m_logSchedulerOverhead;
+    private final Consumer<Time> m_logTotalTime;
+
+    public CommandProfiler(LogBuilder builder) {
+        m_builder = builder;
+
+        var scheduler = CommandScheduler.getInstance();
+        scheduler.onCommandInitialize(this::onCommandHook);
+        scheduler.onCommandExecute(this::onCommandHook);
+        scheduler.onCommandInterrupt(this::onCommandHook);
+        scheduler.onCommandFinish(this::onCommandHook);
+        scheduler.getDefaultButtonLoop().bind(this::onSubsystemsDone);
+
+        // -------------
+        //    Logging
+        // -------------
+        m_logSubsystemTime =
+                builder.makeSyncLogEntry("Profiler/Scheduler/Subsystem Periodic", builder.timeType_ms);
+        m_logCommandTime = builder.makeSyncLogEntry("Profiler/Scheduler/Commands", builder.timeType_ms);
+        m_logSchedulerOverhead =
+                builder.makeSyncLogEntry("Profiler/Scheduler/Overhead", builder.timeType_ms);
+        m_logTotalTime = builder.makeSyncLogEntry("Profiler/Scheduler/Total", builder.timeType_ms);
+    }
+
+    private void onSubsystemsDone() {
+        if (!m_inRun || m_subsystemsDone) {
+            return;
+        }
+
+        m_subsystemsDone = true;
+        m_lastMark_us = WPIUtilJNI.now();
+        m_subsystemTime_us = m_lastMark_us - m_runStart_us;
+    }
+
+    private void onCommandHook(Command command) {
+        if (!m_inRun) {
+            // Scheduled or canceled from outside of the scheduler's run, not part of its cost
+            return;
+        }
+
+        long now = WPIUtilJNI.now();
+        long elapsed = now - m_lastMark_us;
+        m_lastMark_us = now;
+
+        var stats = m_stats.get(command);
+        if (stats == null) {
+            stats = new CommandStats(command.getName());
+            m_stats.put(command, stats);
+            m_statsList.add(stats);
+        }
+
+        stats.loopTime_us += elapsed;
+        stats.ranThisLoop = true;
+        m_commandTime_us += elapsed;
+    }
+
+    /** Runs the command scheduler, timing every command that it runs. */
+    public void run() {
+        m_runStart_us = WPIUtilJNI.now();
+        m_lastMark_us = m_runStart_us;
+        m_subsystemsDone = false;
+        m_subsystemTime_us = 0;
+        m_commandTime_us = 0;
+
+        m_inRun = true;
+        CommandScheduler.getInstance().run();
+        m_inRun = false;
+
+        long runEnd_us = WPIUtilJNI.now();
+        long total_us = runEnd_us - m_runStart_us;
+
+        m_logSubsystemTime.accept(Time.seconds(m_subsystemTime_us * 1.0e-6));
+        m_logCommandTime.accept(Time.seconds(m_commandTime_us * 1.0e-6));
+        m_logSchedulerOverhead.accept(
+                Time.seconds((total_us - m_subsystemTime_us - m_commandTime_us) * 1.0e-6));
+        m_logTotalTime.accept(Time.seconds(total_us * 1.0e-6));
+
+        for (int i = 0; i < m_statsList.size(); i++) {
+            var stats = m_statsList.get(i);
+            if (!stats.ranThisLoop) {
+                continue;
+            }
+
+            stats.logLoopTime.accept(Time.seconds(stats.loopTime_us * 1.0e-6));
+            stats.matchTotal_us += stats.loopTime_us;
+            stats.matchMax_us = Math.max(stats.matchMax_us, stats.loopTime_us);
+            stats.matchRuns++;
+            stats.loopTime_us = 0;
+            stats.ranThisLoop = false;
+        }
+    }
+
+    /** Resets the per match totals. Call when a match starts. */
+    public void startMatch() {
+        for (int i = 0; i < m_statsList.size(); i++) {
+            var stats = m_statsList.get(i);
+            stats.matchTotal_us = 0;
+            stats.matchMax_us = 0;
+            stats.matchRuns = 0;
+        }
+    }
+
+    /**
+     * Logs the total, maximum, run count and rank of the costliest commands since {@link
+     * #startMatch()} was called. Call when a match ends.
+     */
+    public void endMatch() {
+        var sorted = new ArrayList<>(m_statsList);
+        sorted.sort((a, b) -> Long.compare(b.matchTotal_us, a.matchTotal_us));
+
+        for (int i = 0; i < Math.min(k_topCommandCount, sorted.size()); i++) {
+            var stats = sorted.get(i);
+            if (stats.matchRuns == 0) {
+                break;
+            }
+
+            stats.logMatchTotal.accept(Time.seconds(stats.matchTotal_us * 1.0e-6));
+            stats.logMatchMax.accept(Time.seconds(stats.matchMax_us * 1.0e-6));
+            stats.logMatchRuns.accept(stats.matchRuns);
+            stats.logMatchRank.accept(i + 1);
+        }
+    }
+}
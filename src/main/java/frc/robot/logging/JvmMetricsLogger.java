@@ -0,0 +1,276 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import edu.wpi.first.util.WPIUtilJNI;
+import frc.library.RobotRunnerBase;
+import frc.robot.Telemetry;
+import frc.robot.Telemetry.TeleAllocation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import org.growingstems.frc.util.WpiTimeSource;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.timer.Timer;
+
+/**
+ * Logs JVM garbage collection and heap metrics alongside the main loop timings and the main thread
+ * allocations measured by {@link RobotRunnerBase}. GC events are timestamped in the same FPGA time
+ * base as {@link RobotRunnerBase#getLoopStartTimestamp()} so that a loop time spike can be
+ * attributed to the collection that caused it.
+ *
+ * <p>{@link #update()} must be called once per loop from the main thread.
+ */
+public class JvmMetricsLogger {
+    /**
+     * A single garbage collection.
+     *
+     * @param start FPGA timestamp of when the collection started
+     * @param duration how long the collection took
+     * @param loopOffset start of the collection relative to the start of the loop it was logged in.
+     *     Negative values mean the collection started during a previous loop iteration.
+     * @param reclaimedKB amount of heap freed by the collection in kilobytes
+     */
+    public static record GcEvent(Time start, Time duration, Time loopOffset, double reclaimedKB) {}
+
+    private static final Time k_heapSamplePeriod = Time.seconds(0.25);
+    private static final double k_collectionThresholdRatio = 0.8;
+
+    /** Data captured on the JMX notification thread, handed off to the main thread. */
+    private static record PendingGc(
+            Consumer<GcEvent> logEntry,
+            double startSeconds,
+            double durationSeconds,
+            long reclaimedBytes) {}
+
+    private final RobotRunnerBase m_runner;
+    private final LogRateGroup m_diagnosticsRateGroup;
+    private final MemoryMXBean m_memoryBean;
+    private final double m_jvmStartTimestamp_s;
+
+    private final ConcurrentLinkedQueue<PendingGc> m_pendingGcs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger m_thresholdExceededCount = new AtomicInteger();
+    private int m_loggedThresholdExceededCount = -1;
+
+    private final Timer m_heapSampleTimer;
+    private final Timer m_allocationTimer;
+    // Bytes the main thread allocated since the allocation was last logged
+    private long m_allocatedBytes = 0;
+    private int m_allocationLoops = 0;
+
+    // Logging
+    private final Consumer<Time> m_logMainLoopTime;
+    private final Consumer<Time> m_logMainExecutionTime;
+    private final Consumer<Time> m_logSleepTime;
+    private final Consumer<LongSupplier> m_logLoopStart;
+    private final LongSupplier m_loopStart_us;
+    private final Consumer<Time> m_logParallelUpdateTime;
+    private final Consumer<Time> m_logParallelUpdateSerialTime;
+    private final Consumer<Double> m_logParallelUpdateSpeedup;
+    private final Consumer<Double> m_logAllocatedPerLoop;
+    private final Consumer<Double> m_logAllocationRate;
+    private final Consumer<Double> m_logHeapUsed;
+    private final Consumer<Double> m_logHeapCommitted;
+    private final Consumer<Integer> m_logThresholdExceeded;
+    private final Consumer<Integer> m_logExitAllocatedBytes;
+    private final Consumer<Integer> m_logInitAllocatedBytes;
+    private final Consumer<Integer> m_logRobotPeriodicAllocatedBytes;
+    private final Consumer<Integer> m_logModePeriodicAllocatedBytes;
+
+    public JvmMetricsLogger(LogBuilder builder, RobotRunnerBase runner) {
+        m_runner = runner;
+        m_diagnosticsRateGroup = builder.diagnosticsRateGroup;
+        m_memoryBean = ManagementFactory.getMemoryMXBean();
+
+        // GcInfo start times are relative to JVM start, convert them into FPGA time
+        m_jvmStartTimestamp_s = WPIUtilJNI.now() * 1.0e-6
+                - ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+
+        var ts = new WpiTimeSource();
+        m_heapSampleTimer = ts.createTimer();
+        m_heapSampleTimer.start();
+        m_allocationTimer = ts.createTimer();
+        m_allocationTimer.start();
+
+        // -------------
+        //    Logging
+        // -------------
+        m_logMainLoopTime = builder.makeSyncLogEntry("Timing/Main Loop", builder.timeType_ms);
+        m_logMainExecutionTime =
+                builder.makeSyncLogEntry("Timing/Main Execution", builder.timeType_ms);
+        m_logSleepTime = builder.makeSyncLogEntry("Timing/Sleep", builder.timeType_ms);
+        m_loopStart_us = m_runner::getLoopStart_us;
+        m_logLoopStart =
+                builder.makeSyncLogEntry("Timing/Loop Start", builder.microsecondTimeType_s);
+        m_logParallelUpdateTime =
+                builder.makeSyncLogEntry("Timing/Parallel Update/Stage", builder.timeType_ms);
+        m_logParallelUpdateSerialTime =
+                builder.makeSyncLogEntry("Timing/Parallel Update/Serial", builder.timeType_ms);
+        m_logParallelUpdateSpeedup =
+                builder.makeSyncLogEntry("Timing/Parallel Update/Speedup", builder.doubleType);
+        m_logAllocatedPerLoop = builder.makeSyncLogEntry(
+                "JVM/Main Thread/Allocated per Loop (kB)", builder.doubleType);
+        m_logAllocationRate =
+                builder.makeSyncLogEntry("JVM/Main Thread/Allocation Rate (kBps)", builder.doubleType);
+        m_logHeapUsed = builder.makeSyncLogEntry("JVM/Heap/Used (kB)", builder.doubleType);
+        m_logHeapCommitted = builder.makeSyncLogEntry("JVM/Heap/Committed (kB)", builder.doubleType);
+        m_logThresholdExceeded =
+                builder.makeSyncLogEntry("JVM/Heap/Threshold Exceeded Count", builder.integerType);
+        m_logExitAllocatedBytes =
+                builder.makeSyncLogEntry("Allocation/Exit (B)", builder.integerType);
+        m_logInitAllocatedBytes =
+                builder.makeSyncLogEntry("Allocation/Init (B)", builder.integerType);
+        m_logRobotPeriodicAllocatedBytes =
+                builder.makeSyncLogEntry("Allocation/Robot Periodic (B)", builder.integerType);
+        m_logModePeriodicAllocatedBytes =
+                builder.makeSyncLogEntry("Allocation/Mode Periodic (B)", builder.integerType);
+
+        // ----------------------------
+        //    GC Notification Setup
+        // ----------------------------
+        for (var gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gcBean instanceof NotificationEmitter emitter)) {
+                continue;
+            }
+
+            Consumer<GcEvent> logEntry = builder.makeSyncLogEntry(
+                    "JVM/GC/" + gcBean.getName(), builder.getGcEventType());
+            emitter.addNotificationListener(
+                    (notification, handback) -> onGcNotification(notification, logEntry), null, null);
+        }
+
+        // Heap pools report when they are still above the threshold right after a collection, which
+        // is the early warning sign of the heap being too small for the robot code.
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isCollectionUsageThresholdSupported()
+                    && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * k_collectionThresholdRatio));
+            }
+        }
+        ((NotificationEmitter) m_memoryBean)
+                .addNotificationListener(
+                        (notification, handback) -> {
+                            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+                                    notification.getType())) {
+                                m_thresholdExceededCount.incrementAndGet();
+                            }
+                        },
+                        null,
+                        null);
+    }
+
+    /** Called on the JMX notification thread. Must not touch the log directly. */
+    private void onGcNotification(Notification notification, Consumer<GcEvent> logEntry) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+                notification.getType())) {
+            return;
+        }
+
+        var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        var gcInfo = info.getGcInfo();
+        long reclaimed =
+                sumUsed(gcInfo.getMemoryUsageBeforeGc()) - sumUsed(gcInfo.getMemoryUsageAfterGc());
+        m_pendingGcs.add(new PendingGc(
+                logEntry,
+                m_jvmStartTimestamp_s + gcInfo.getStartTime() / 1000.0,
+                gcInfo.getDuration() / 1000.0,
+                reclaimed));
+    }
+
+    private static long sumUsed(Map<String, MemoryUsage> usages) {
+        long used = 0;
+        for (var usage : usages.values()) {
+            used += usage.getUsed();
+        }
+        return used;
+    }
+
+    /** Logs all metrics gathered since the last call. Call once per loop from the main thread. */
+    public void update() {
+        // The runner measures the main thread's allocation, counted every loop so none is missed
+        // while the diagnostics are slowed down
+        m_allocatedBytes += m_runner.getMainExecutionAllocatedBytes();
+        m_allocationLoops++;
+
+        // Loop Timing
+        m_logLoopStart.accept(m_loopStart_us);
+        m_logMainLoopTime.accept(m_runner.getMainLoopTime());
+        m_logMainExecutionTime.accept(m_runner.getMainExecutionTime());
+        m_logSleepTime.accept(m_runner.getSleepTime());
+        var parallelUpdateStage = m_runner.getParallelUpdateStage();
+        if (parallelUpdateStage.getTaskCount() > 0) {
+            m_logParallelUpdateTime.accept(m_runner.getParallelUpdateTime());
+            m_logParallelUpdateSerialTime.accept(parallelUpdateStage.getSerialTime());
+            m_logParallelUpdateSpeedup.accept(parallelUpdateStage.getSpeedup());
+        }
+
+        // Garbage Collections
+        PendingGc gc;
+        while ((gc = m_pendingGcs.poll()) != null) {
+            gc.logEntry()
+                    .accept(new GcEvent(
+                            Time.seconds(gc.startSeconds()),
+                            Time.seconds(gc.durationSeconds()),
+                            Time.seconds(gc.startSeconds() - m_runner.getLoopStart_us() * 1.0e-6),
+                            gc.reclaimedBytes() / 1024.0));
+        }
+
+        // Heap Usage
+        // getHeapMemoryUsage() allocates, so it is sampled at a lower rate than the loop. It has
+        // its own timer, so it isn't slowed down along with the diagnostics.
+        if (m_heapSampleTimer.hasElapsed(k_heapSamplePeriod)) {
+            m_heapSampleTimer.reset();
+            var heap = m_memoryBean.getHeapMemoryUsage();
+            m_logHeapUsed.accept(heap.getUsed() / 1024.0);
+            m_logHeapCommitted.accept(heap.getCommitted() / 1024.0);
+        }
+
+        int thresholdExceededCount = m_thresholdExceededCount.get();
+        if (thresholdExceededCount != m_loggedThresholdExceededCount) {
+            m_loggedThresholdExceededCount = thresholdExceededCount;
+            m_logThresholdExceeded.accept(thresholdExceededCount);
+        }
+
+        if (!m_diagnosticsRateGroup.isActive()) {
+            return;
+        }
+
+        // Main Thread Allocation
+        double allocatedKB = m_allocatedBytes / 1024.0;
+        int loops = m_allocationLoops;
+        m_allocatedBytes = 0;
+        m_allocationLoops = 0;
+        double elapsed_s = m_allocationTimer.reset().asSeconds();
+        // Averaged over the loops since the last logged loop, which may be several when degraded
+        m_logAllocatedPerLoop.accept(allocatedKB / loops);
+        if (elapsed_s > 0.0) {
+            m_logAllocationRate.accept(allocatedKB / elapsed_s);
+        }
+
+        // Per Section Allocation
+        m_logExitAllocatedBytes.accept((int) m_runner.getExitAllocatedBytes());
+        m_logInitAllocatedBytes.accept((int) m_runner.getInitAllocatedBytes());
+        m_logRobotPeriodicAllocatedBytes.accept((int) m_runner.getRobotPeriodicAllocatedBytes());
+        m_logModePeriodicAllocatedBytes.accept((int) m_runner.getModePeriodicAllocatedBytes());
+        if (!Telemetry.isNonEssentialPaused()) {
+            TeleAllocation.getRobotPeriodicBytes().setDouble(m_runner.getRobotPeriodicAllocatedBytes());
+            TeleAllocation.getModePeriodicBytes().setDouble(m_runner.getModePeriodicAllocatedBytes());
+        }
+    }
+}
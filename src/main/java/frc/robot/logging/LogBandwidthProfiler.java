@@ -0,0 +1,271 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.WPIUtilJNI;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Counts the samples written to every log entry, so the entries using the most bandwidth can be
+ * found and decimated. Each sample costs a single increment; bytes are derived from the fixed size
+ * of the entry's {@link LogStruct} and rates from the time since counting started, only when a
+ * summary is made.
+ *
+ * <p>Sizes are the payload of each record, the per record overhead of the log format isn't
+ * included.
+ */
+public class LogBandwidthProfiler {
+    private static final class EntryCounter {
+        final String name;
+        final String typeName;
+        final int bytesPerSample;
+        // Only written by the thread logging the entry, summaries may read a slightly stale value
+        long samples = 0;
+
+        EntryCounter(String name, String typeName, int bytesPerSample) {
+            this.name = name;
+            this.typeName = typeName;
+            this.bytesPerSample = bytesPerSample;
+        }
+
+        long getBytes() {
+            return samples * bytesPerSample;
+        }
+    }
+
+    private static final class TypeTotal {
+        final String typeName;
+        int entries = 0;
+        long samples = 0;
+        long bytes = 0;
+
+        TypeTotal(String typeName) {
+            this.typeName = typeName;
+        }
+    }
+
+    private final ArrayList<EntryCounter> m_counters = new ArrayList<>();
+    private volatile long m_start_us = WPIUtilJNI.now();
+
+    /**
+     * Wraps an entry so that every sample written to it is counted.
+     *
+     * @param <T> The logged type
+     * @param name The name of the entry
+     * @param struct The layout of the logged type, or null if unknown, in which case only samples
+     *     are counted
+     * @param entry The entry to count
+     * @return the counted entry
+     */
+    public <T> Consumer<T> count(String name, LogStruct<?> struct, Consumer<T> entry) {
+        var counter = struct == null
+                ? new EntryCounter(name, "unknown", 0)
+                : new EntryCounter(name, struct.getTypeName(), struct.getSize());
+        synchronized (m_counters) {
+            m_counters.add(counter);
+        }
+
+        return value -> {
+            entry.accept(value);
+            counter.samples++;
+        };
+    }
+
+    /** Zeroes every counter. Call when a new log is started. */
+    public void reset() {
+        synchronized (m_counters) {
+            for (int i = 0; i < m_counters.size(); i++) {
+                m_counters.get(i).samples = 0;
+            }
+        }
+        m_start_us = WPIUtilJNI.now();
+    }
+
+    /**
+     * Gets the bytes written to an entry since counting started.
+     *
+     * @param name The name of the entry
+     * @return the bytes written, or zero if the entry doesn't exist
+     */
+    public long getBytes(String name) {
+        synchronized (m_counters) {
+            for (int i = 0; i < m_counters.size(); i++) {
+                var counter = m_counters.get(i);
+                if (counter.name.equals(name)) {
+                    return counter.getBytes();
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** The sample counts of every entry at one moment, made into a summary table later. */
+    public static final class Snapshot {
+        private final ArrayList<EntryCounter> m_counters;
+        private final long[] m_samples;
+        private final double m_elapsed_s;
+
+        private Snapshot(ArrayList<EntryCounter> counters, double elapsed_s) {
+            m_counters = counters;
+            m_elapsed_s = elapsed_s;
+
+            // Entries keep counting after the snapshot, so the counts are copied
+            m_samples = new long[counters.size()];
+            for (int i = 0; i < counters.size(); i++) {
+                m_samples[i] = counters.get(i).samples;
+            }
+        }
+
+        /**
+         * Makes a table of every entry and every type, costliest first, with their bytes, samples
+         * and samples per second over the time counted.
+         *
+         * @return the lines of the table
+         */
+        public List<String> getSummary() {
+            return makeSummary(m_counters, m_samples, m_elapsed_s);
+        }
+
+        /**
+         * Writes the summary table.
+         *
+         * @param writer The writer to write the table to
+         * @throws IOException if writing fails
+         */
+        public void writeSummary(Writer writer) throws IOException {
+            for (var line : getSummary()) {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Copies the counts of every entry, so the summary table can be made later or on another
+     * thread, even once the counters are reset. Only copies, so it is cheap enough for the main
+     * loop.
+     *
+     * @return the copied counts
+     */
+    public Snapshot snapshot() {
+        ArrayList<EntryCounter> counters;
+        synchronized (m_counters) {
+            counters = new ArrayList<>(m_counters);
+        }
+        return new Snapshot(
+                counters, Math.max(1.0e-6, (WPIUtilJNI.now() - m_start_us) * 1.0e-6));
+    }
+
+    /**
+     * Makes a table of every entry and every type, costliest first, with their bytes, samples and
+     * samples per second since counting started.
+     *
+     * @return the lines of the table
+     */
+    public List<String> getSummary() {
+        return snapshot().getSummary();
+    }
+
+    private static List<String> makeSummary(
+            ArrayList<EntryCounter> counters, long[] samples, double elapsed_s) {
+        var order = new ArrayList<Integer>();
+        var types = new LinkedHashMap<String, TypeTotal>();
+        long totalSamples = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < counters.size(); i++) {
+            var counter = counters.get(i);
+            long bytes = samples[i] * counter.bytesPerSample;
+            order.add(i);
+
+            var type = types.computeIfAbsent(counter.typeName, TypeTotal::new);
+            type.entries++;
+            type.samples += samples[i];
+            type.bytes += bytes;
+            totalSamples += samples[i];
+            totalBytes += bytes;
+        }
+        order.sort((a, b) -> Long.compare(
+                samples[b] * counters.get(b).bytesPerSample, samples[a] * counters.get(a).bytesPerSample));
+        var sortedTypes = new ArrayList<>(types.values());
+        sortedTypes.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+
+        var lines = new ArrayList<String>();
+        lines.add(String.format(
+                "Log bandwidth over %.1f s: %d bytes, %d samples, %.1f kB/s",
+                elapsed_s, totalBytes, totalSamples, totalBytes / 1024.0 / elapsed_s));
+        lines.add(String.format(
+                "%-48s %-24s %6s %10s %12s %10s %7s",
+                "Entry", "Type", "B/smp", "Samples", "Bytes", "Samples/s", "Share"));
+        for (int i : order) {
+            var counter = counters.get(i);
+            long bytes = samples[i] * counter.bytesPerSample;
+            lines.add(String.format(
+                    "%-48s %-24s %6d %10d %12d %10.1f %6.1f%%",
+                    counter.name,
+                    counter.typeName,
+                    counter.bytesPerSample,
+                    samples[i],
+                    bytes,
+                    samples[i] / elapsed_s,
+                    getShare(bytes, totalBytes)));
+        }
+
+        lines.add(String.format(
+                "%-48s %-24s %6s %10s %12s %10s %7s",
+                "Type", "", "Count", "Samples", "Bytes", "Samples/s", "Share"));
+        for (var type : sortedTypes) {
+            lines.add(String.format(
+                    "%-48s %-24s %6d %10d %12d %10.1f %6.1f%%",
+                    type.typeName,
+                    "",
+                    type.entries,
+                    type.samples,
+                    type.bytes,
+                    type.samples / elapsed_s,
+                    getShare(type.bytes, totalBytes)));
+        }
+        return lines;
+    }
+
+    private static double getShare(long bytes, long totalBytes) {
+        return totalBytes == 0 ? 0.0 : 100.0 * bytes / totalBytes;
+    }
+
+    /**
+     * Writes the summary table.
+     *
+     * @param writer The writer to write the table to
+     * @throws IOException if writing fails
+     */
+    public void writeSummary(Writer writer) throws IOException {
+        snapshot().writeSummary(writer);
+    }
+
+    /**
+     * Publishes the summary table whenever it is requested over NetworkTables. The summary is made
+     * on the NetworkTables listener thread, so the main loop isn't affected.
+     *
+     * @param request Set to true to request a summary, it is set back to false once published
+     * @param summary The entry the lines of the summary table are published to
+     */
+    public void publishOnRequest(GenericEntry request, GenericEntry summary) {
+        NetworkTableInstance.getDefault()
+                .addListener(request, EnumSet.of(NetworkTableEvent.Kind.kValueAll), event -> {
+                    if (request.getBoolean(false)) {
+                        summary.setStringArray(getSummary().toArray(new String[0]));
+                        request.setBoolean(false);
+                    }
+                });
+    }
+}
@@ -5,7 +5,25 @@
 package frc.robot.logging;
 
 import com.ctre.phoenix6.CANBus.CANBusStatus;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
+import frc.library.StartupTimeline;
+import frc.library.TimestampedValue;
+import frc.robot.Telemetry.TeleRobot;
+import frc.robot.logging.JvmMetricsLogger.GcEvent;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.DoubleFunction;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
 import org.growingstems.frc.util.WpiTimeSource;
 import org.growingstems.math.Pose2dU;
 import org.growingstems.math.Vector2dU;
@@ -23,6 +41,7 @@ import org.growingstems.measurements.Measurements.Voltage;
 import org.growingstems.util.Timestamped;
 import org.growingstems.util.logger.LogEntryType;
 import org.growingstems.util.logger.LogFileBuilder;
+import org.growingstems.util.timer.TimeSource;
 
 public class LogBuilder extends LogFileBuilder {
     // Helpful initializers
@@ -33,6 +52,10 @@ public class LogBuilder extends LogFileBuilder {
 
     public final LogEntryType<Time> timeType_s;
     public final LogEntryType<Time> timeType_ms;
+    // Laid out like the time types, but read from primitive microseconds so logging every loop
+    // doesn't allocate, i.e. {@code runner::getLoopStart_us}
+    public final LogEntryType<LongSupplier> microsecondTimeType_s;
+    public final LogEntryType<LongSupplier> microsecondTimeType_ms;
     public final LogEntryType<Length> lengthType_in;
     public final LogEntryType<Velocity> velocityType_inps;
     public final LogEntryType<Velocity> velocityType_ftps;
@@ -44,101 +67,923 @@ public class LogBuilder extends LogFileBuilder {
     public final LogEntryType<Energy> energyType_joules;
     public final LogEntryType<Temperature> temperatureType_celsius;
     public final LogEntryType<Power> powerType_watts;
-    public final LogEntryType<Vector2dU<Length>> vector2dUType_cartesian_in;
-    public final LogEntryType<Vector2dU<Velocity>> vector2dUType_cartesian_inps;
-    public final LogEntryType<Vector2dU<Velocity>> vector2dUType_cartesian_ftps;
-    public final LogEntryType<Vector2dU<Velocity>> vector2dUType_polar_ftps;
-    public final LogEntryType<Vector2dU<Acceleration>> vector2dUType_cartesian_inps2;
-    public final LogEntryType<Pose2dU<Length>> pose2dUType_in;
-    public final LogEntryType<Timestamped<Pose2dU<Length>>> timestampedPose2dUType_in;
-    public final LogEntryType<CANBusStatus> canBusStatusType;
-
-    private LogBuilder(File logDir, String initialLogFileName) {
-        super(logDir, initialLogFileName, "2025 Reefscape Log File", new WpiTimeSource());
+    public final LogEntryType<TimestampedValue> timestampedVoltageType_volts;
+    public final LogEntryType<TimestampedValue> timestampedCurrentType_amps;
+
+    // Registered on first use, see the getters below. These may be registered after records have
+    // been written. The growingstems log defines types inline like the entries made mid-run by
+    // CommandProfiler, the DataLog adds a struct's schema when its first entry is made, the stream
+    // server sends new schemas ahead of the entry that uses them, and the schema sidecar is
+    // rewritten on the next sync.
+    private LogEntryType<Vector2dU<Length>> m_vector2dUType_cartesian_in = null;
+    private LogEntryType<Vector2dU<Velocity>> m_vector2dUType_cartesian_inps = null;
+    private LogEntryType<Vector2dU<Velocity>> m_vector2dUType_cartesian_ftps = null;
+    private LogEntryType<Vector2dU<Velocity>> m_vector2dUType_polar_ftps = null;
+    private LogEntryType<Vector2dU<Acceleration>> m_vector2dUType_cartesian_inps2 = null;
+    private LogEntryType<Pose2dU<Length>> m_pose2dUType_in = null;
+    private LogEntryType<Timestamped<Pose2dU<Length>>> m_timestampedPose2dUType_in = null;
+    private LogEntryType<CANBusStatus> m_canBusStatusType = null;
+    private LogEntryType<GcEvent> m_gcEventType = null;
+
+    // Rate Groups
+    /** Diagnostic entries that are slowed down when the robot needs to shed load. */
+    public final LogRateGroup diagnosticsRateGroup = new LogRateGroup("Diagnostics");
+
+    private static final String k_bandwidthSummaryDir = "bandwidth";
+    private static final String k_schemaDir = "schemas";
+    // Sidecar files are named after their log with this suffix
+    static final String k_sidecarSuffix = ".txt";
+    // Logs go to the USB drive when one is plugged in, it has more room than the roboRIO
+    private static final File k_usbDir = new File("/u");
+    private static final File k_usbLogDir = new File(k_usbDir, "logs");
+    private static final File k_rioLogDir = new File("/home/lvuser/logs");
+    // Renamed by LogNamer once the date or match is known
+    private static final String k_initialLogFileName = "Unnamed";
+    // Set by the DataLog deploy, see build.gradle
+    private static final boolean k_wpiLog = Boolean.getBoolean("frc.wpilog");
+    // Set by the log streaming deploy, see build.gradle
+    private static final int k_streamPort = Integer.getInteger("frc.logStreamPort", 0);
+    private static final int k_streamBufferBytes = 1 << 20;
+
+    /** An entry whose output can be moved to a new file when a log segment starts. */
+    private static final class SegmentedEntry<T> implements Consumer<T> {
+        final String name;
+        final LogEntryType<T> type;
+        Consumer<T> output;
+
+        SegmentedEntry(String name, LogEntryType<T> type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        @Override
+        public void accept(T value) {
+            output.accept(value);
+        }
+    }
+
+    private final File m_logDir;
+    private final TimeSource m_timeSource;
+    // Name the log file was last given, read by the background threads looking for the live log
+    private final Object m_logNameLock = new Object();
+    private String m_logName;
+
+    // Schemas
+    private final LogSchemaRegistry m_schemaRegistry = new LogSchemaRegistry();
+    private final HashMap<LogEntryType<?>, LogStruct<?>> m_structs = new HashMap<>();
+    private final HashMap<LogStruct<?>, LogEntryType<?>> m_entryTypes = new HashMap<>();
+    // Set when the schema file of the current log is out of date
+    private volatile boolean m_schemaChanged = true;
+
+    // Alternate output, when set entries are written to a .wpilog file instead
+    private volatile WpiLogBackend m_wpiLogBackend = null;
+    // The next segment's file, opened in the background, waiting for the entries to move to it
+    private final AtomicReference<WpiLogBackend> m_openedSegment = new AtomicReference<>();
+    // Entries written to the DataLog backend, re-created in the file of every new segment
+    private final ArrayList<SegmentedEntry<?>> m_segmentedEntries = new ArrayList<>();
+    // Live mirror of every entry, for watching logs during practice
+    private LogStreamServer m_streamServer = null;
+    // Per entry sample counts, to find the entries worth decimating
+    private final LogBandwidthProfiler m_bandwidthProfiler = new LogBandwidthProfiler();
+    private boolean m_bandwidthPublished = false;
+    // Runs the file work the main loop shouldn't wait on
+    private Executor m_backgroundExecutor = Runnable::run;
+
+    private LogBuilder(File logDir, String initialLogFileName, TimeSource timeSource) {
+        super(logDir, initialLogFileName, "2025 Reefscape Log File", timeSource);
+        m_logDir = logDir;
+        m_timeSource = timeSource;
+        m_logName = initialLogFileName;
+
+        // Primitive Types
+        // Built into the log file, only described for the schema registry
+        describe(
+                doubleType,
+                LogStruct.<Double>builder("LogDouble")
+                        .addDouble("value", v -> v)
+                        .decodeAs(Double.class, f -> (Double) f[0])
+                        .build());
+        describe(
+                floatType,
+                LogStruct.<Float>builder("LogFloat")
+                        .addFloat("value", v -> v)
+                        .decodeAs(Float.class, f -> (Float) f[0])
+                        .build());
+        describe(
+                integerType,
+                LogStruct.<Integer>builder("LogInt32")
+                        .addInteger("value", v -> v)
+                        .decodeAs(Integer.class, f -> (Integer) f[0])
+                        .build());
 
         // Unit Types
-        timeType_s = this.<Time>buildGroupType("Time")
-                .addMember("seconds", this.doubleType, Time::asSeconds)
-                .register(Time.ZERO);
-        timeType_ms = this.<Time>buildGroupType("Time")
-                .addMember("milliseconds", this.doubleType, Time::asMilliseconds)
-                .register(Time.ZERO);
-        lengthType_in = this.<Length>buildGroupType("Length")
-                .addMember("inches", this.doubleType, Length::asInches)
-                .register(Length.ZERO);
-        velocityType_inps = this.<Velocity>buildGroupType("Velocity")
-                .addMember("inches per second", this.doubleType, Velocity::asInchesPerSecond)
-                .register(Velocity.ZERO);
-        velocityType_ftps = this.<Velocity>buildGroupType("Velocity")
-                .addMember("feet per second", this.doubleType, Velocity::asFeetPerSecond)
-                .register(Velocity.ZERO);
-        accelerationType_inps2 = this.<Acceleration>buildGroupType("Acceleration")
-                .addMember(
-                        "inches per second squared", this.doubleType, Acceleration::asInchesPerSecondSquared)
-                .register(Acceleration.ZERO);
-        angleType_deg = this.<Angle>buildGroupType("Angle")
-                .addMember("degrees", this.doubleType, Angle::asDegrees)
-                .register(Angle.ZERO);
-        angularVelocityType_rpm = this.<AngularVelocity>buildGroupType("AngularVelocity")
-                .addMember("rpm", this.doubleType, AngularVelocity::asRevolutionsPerMinute)
-                .register(AngularVelocity.ZERO);
-        voltageType_volts = this.<Voltage>buildGroupType("Voltage")
-                .addMember("volts", this.doubleType, Voltage::asVolts)
-                .register(Voltage.ZERO);
-        currentType_amps = this.<Current>buildGroupType("Current")
-                .addMember("amps", this.doubleType, Current::asAmps)
-                .register(Current.ZERO);
-        energyType_joules = this.<Energy>buildGroupType("Energy")
-                .addMember("joules", this.doubleType, Energy::asJoules)
-                .register(Energy.ZERO);
-        temperatureType_celsius = this.<Temperature>buildGroupType("Temperature")
-                .addMember("celsius", this.doubleType, Temperature::asCelsius)
-                .register(Temperature.ZERO);
-        powerType_watts = this.<Power>buildGroupType("Power")
-                .addMember("watts", this.doubleType, Power::asWatts)
-                .register(Power.ZERO);
-
-        // Pose Types
-
-        vector2dUType_cartesian_in = this.<Vector2dU<Length>>buildGroupType("Vector2dU")
-                .addMember("X", lengthType_in, Vector2dU::getX)
-                .addMember("Y", lengthType_in, Vector2dU::getY)
-                .register(new Vector2dU<Length>(Length.ZERO, Length.ZERO));
-        vector2dUType_cartesian_inps = this.<Vector2dU<Velocity>>buildGroupType("Vector2dU")
-                .addMember("X", velocityType_inps, Vector2dU::getX)
-                .addMember("Y", velocityType_inps, Vector2dU::getY)
-                .register(new Vector2dU<Velocity>(Velocity.ZERO, Velocity.ZERO));
-        vector2dUType_cartesian_ftps = this.<Vector2dU<Velocity>>buildGroupType("Vector2dU")
-                .addMember("X", velocityType_ftps, Vector2dU::getX)
-                .addMember("Y", velocityType_ftps, Vector2dU::getY)
-                .register(new Vector2dU<Velocity>(Velocity.ZERO, Velocity.ZERO));
-        vector2dUType_polar_ftps = this.<Vector2dU<Velocity>>buildGroupType("Vector2dU")
-                .addMember("Mag", velocityType_ftps, Vector2dU::getMagnitude)
-                .addMember("Angle", angleType_deg, Vector2dU::getAngle)
-                .register(new Vector2dU<Velocity>(Velocity.ZERO, Velocity.ZERO));
-        vector2dUType_cartesian_inps2 = this.<Vector2dU<Acceleration>>buildGroupType("Vector2dU")
-                .addMember("X", accelerationType_inps2, Vector2dU::getX)
-                .addMember("Y", accelerationType_inps2, Vector2dU::getY)
-                .register(new Vector2dU<Acceleration>(Acceleration.ZERO, Acceleration.ZERO));
-        pose2dUType_in = this.<Pose2dU<Length>>buildGroupType("Pose2dU")
-                .addMember("X", lengthType_in, Pose2dU::getX)
-                .addMember("Y", lengthType_in, Pose2dU::getY)
-                .addMember("Heading", angleType_deg, Pose2dU::getRotation)
-                .register(new Pose2dU<Length>(Length.ZERO, Length.ZERO, Angle.ZERO));
-        timestampedPose2dUType_in = this.<Timestamped<Pose2dU<Length>>>buildGroupType(
-                        "Timestamped Pose2dU")
-                .addMember("Pose2dU", pose2dUType_in, Timestamped::getData)
-                .addMember("Timestamp", timeType_s, Timestamped::getTimestamp)
-                .register(new Timestamped<Pose2dU<Length>>(
-                        new Pose2dU<Length>(Length.ZERO, Length.ZERO, Angle.ZERO), Time.ZERO));
-
-        // Other
-        canBusStatusType = this.<CANBusStatus>buildGroupType("CTRE CAN Status")
-                .addMember("Bus Off Count", integerType, s -> s.BusOffCount)
-                .addMember("Percent Bus Utilization", floatType, s -> s.BusUtilization)
-                .addMember("Receive Error Count", integerType, s -> s.REC)
-                .addMember("Transmit Error Count", integerType, s -> s.TEC)
-                .addMember("TX Full Count", integerType, s -> s.TxFullCount)
-                .register(new CANBusStatus());
+        timeType_s = register(
+                unit("Time", Time.class, "seconds", Time::asSeconds, Time::seconds), Time.ZERO);
+        timeType_ms = register(
+                unit("Time", Time.class, "milliseconds", Time::asMilliseconds, Time::milliseconds),
+                Time.ZERO);
+        microsecondTimeType_s = register(
+                unit(
+                        "Time",
+                        LongSupplier.class,
+                        "seconds",
+                        v -> v.getAsLong() * 1.0e-6,
+                        s -> microseconds(Math.round(s * 1.0e6))),
+                microseconds(0));
+        microsecondTimeType_ms = register(
+                unit(
+                        "Time",
+                        LongSupplier.class,
+                        "milliseconds",
+                        v -> v.getAsLong() * 1.0e-3,
+                        ms -> microseconds(Math.round(ms * 1.0e3))),
+                microseconds(0));
+        lengthType_in = register(
+                unit("Length", Length.class, "inches", Length::asInches, Length::inches),
+                Length.ZERO);
+        velocityType_inps = register(
+                unit(
+                        "Velocity",
+                        Velocity.class,
+                        "inches per second",
+                        Velocity::asInchesPerSecond,
+                        Velocity::inchesPerSecond),
+                Velocity.ZERO);
+        velocityType_ftps = register(
+                unit(
+                        "Velocity",
+                        Velocity.class,
+                        "feet per second",
+                        Velocity::asFeetPerSecond,
+                        Velocity::feetPerSecond),
+                Velocity.ZERO);
+        accelerationType_inps2 = register(
+                unit(
+                        "Acceleration",
+                        Acceleration.class,
+                        "inches per second squared",
+                        Acceleration::asInchesPerSecondSquared,
+                        Acceleration::inchesPerSecondSquared),
+                Acceleration.ZERO);
+        angleType_deg = register(
+                unit("Angle", Angle.class, "degrees", Angle::asDegrees, Angle::degrees),
+                Angle.ZERO);
+        angularVelocityType_rpm = register(
+                unit(
+                        "AngularVelocity",
+                        AngularVelocity.class,
+                        "rpm",
+                        AngularVelocity::asRevolutionsPerMinute,
+                        AngularVelocity::revolutionsPerMinute),
+                AngularVelocity.ZERO);
+        voltageType_volts = register(
+                unit("Voltage", Voltage.class, "volts", Voltage::asVolts, Voltage::volts),
+                Voltage.ZERO);
+        currentType_amps = register(
+                unit("Current", Current.class, "amps", Current::asAmps, Current::amps),
+                Current.ZERO);
+        energyType_joules = register(
+                unit("Energy", Energy.class, "joules", Energy::asJoules, Energy::joules),
+                Energy.ZERO);
+        temperatureType_celsius = register(
+                unit(
+                        "Temperature",
+                        Temperature.class,
+                        "celsius",
+                        Temperature::asCelsius,
+                        Temperature::celsius),
+                Temperature.ZERO);
+        powerType_watts = register(
+                unit("Power", Power.class, "watts", Power::asWatts, Power::watts), Power.ZERO);
+
+        // Timestamped Types
+        // Read straight from a reused TimestampedValue, i.e. a HAL's signal, so they log without
+        // allocating
+        timestampedVoltageType_volts = register(
+                LogStruct.<TimestampedValue>builder("Timestamped Voltage")
+                        .addDouble("volts", TimestampedValue::getValue)
+                        .addDouble("timestamp seconds", TimestampedValue::getTimestamp_s)
+                        .decodeAs(
+                                TimestampedValue.class,
+                                f -> TimestampedValue.of((Double) f[0], (Double) f[1]))
+                        .build(),
+                TimestampedValue.ZERO);
+        timestampedCurrentType_amps = register(
+                LogStruct.<TimestampedValue>builder("Timestamped Current")
+                        .addDouble("amps", TimestampedValue::getValue)
+                        .addDouble("timestamp seconds", TimestampedValue::getTimestamp_s)
+                        .decodeAs(
+                                TimestampedValue.class,
+                                f -> TimestampedValue.of((Double) f[0], (Double) f[1]))
+                        .build(),
+                TimestampedValue.ZERO);
+    }
+
+    /**
+     * Creates the robot's log builder. Logs are written to a USB drive when one is plugged in,
+     * otherwise to the roboRIO's own storage. In simulation they are written to the logs folder of
+     * the project. When the program is started with {@code -Dfrc.wpilog=true}, entries are written
+     * to a WPILib DataLog instead. When started with {@code -Dfrc.logStreamPort=<port>}, every
+     * entry is also streamed live on that port.
+     *
+     * @return the log builder
+     */
+    public static LogBuilder create() {
+        File logDir;
+        if (RobotBase.isSimulation()) {
+            logDir = new File(Filesystem.getOperatingDirectory(), "logs");
+        } else if (k_usbDir.isDirectory()) {
+            logDir = k_usbLogDir;
+        } else {
+            logDir = k_rioLogDir;
+        }
+        logDir.mkdirs();
+
+        // Timed here rather than in the constructor, alongside the rest of the log's setup
+        long constructionStart = StartupTimeline.start();
+        var builder = new LogBuilder(logDir, k_initialLogFileName, new WpiTimeSource());
+        StartupTimeline.record("LogBuilder", constructionStart);
+
+        // Bandwidth Profiling
+        Runtime.getRuntime()
+                .addShutdownHook(
+                        new Thread(builder::writeBandwidthSummary, "Log Bandwidth Summary"));
+
+        if (k_wpiLog) {
+            // A DataLog can't be renamed while open, so it is given a unique name up front
+            var name = k_initialLogFileName + "_" + LogNamer.getDateTimeName();
+            var fileName = name + ".wpilog";
+            for (int i = 2; new File(logDir, fileName).exists(); i++) {
+                fileName = name + "_" + i + ".wpilog";
+            }
+            builder.setWpiLogBackend(new WpiLogBackend(logDir, fileName));
+        }
+        if (k_streamPort > 0) {
+            try {
+                var server = builder.createStreamServer(k_streamPort, k_streamBufferBytes);
+                builder.setStreamServer(server);
+            } catch (IOException e) {
+                System.out.println("Failed to start the log stream: " + e.getMessage());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Registers a struct with the schema registry and as a group type of the log file, so that the
+     * struct is the single source of the type's layout.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> LogEntryType<T> register(LogStruct<T> struct, T defaultValue) {
+        m_schemaRegistry.register(struct);
+        m_schemaChanged = true;
+
+        var group = this.<T>buildGroupType(struct.getName());
+        for (var field : struct.getFields()) {
+            group = switch (field.getType()) {
+                case DOUBLE -> group.addMember(field.getName(), doubleType, field::getDouble);
+                case FLOAT -> group.addMember(
+                        field.getName(), floatType, v -> (float) field.getDouble(v));
+                case INT32 -> group.addMember(field.getName(), integerType, field::getInt);
+                case STRUCT -> group.addMember(
+                        field.getName(),
+                        (LogEntryType<Object>) getEntryType(field.getStruct()),
+                        field::getStructValue);
+            };
+        }
+
+        var type = group.register(defaultValue);
+        m_structs.put(type, struct);
+        m_entryTypes.put(struct, type);
+        return type;
+    }
+
+    /** Makes the struct of a measurement logged as a single double in one unit. */
+    private static <T> LogStruct<T> unit(
+            String name,
+            Class<T> typeClass,
+            String unitName,
+            ToDoubleFunction<T> getter,
+            DoubleFunction<T> factory) {
+        return LogStruct.<T>builder(name)
+                .addDouble(unitName, getter)
+                .decodeAs(typeClass, f -> factory.apply((Double) f[0]))
+                .build();
+    }
+
+    private static LongSupplier microseconds(long time_us) {
+        return () -> time_us;
+    }
+
+    private <T> void describe(LogEntryType<T> type, LogStruct<T> struct) {
+        m_schemaRegistry.register(struct);
+        m_schemaChanged = true;
+        m_structs.put(type, struct);
+        m_entryTypes.put(struct, type);
+    }
+
+    private LogEntryType<?> getEntryType(LogStruct<?> struct) {
+        return m_entryTypes.get(struct);
+    }
+
+    /**
+     * Gets the struct describing the layout of a registered type.
+     *
+     * @param <T> The logged type
+     * @param type A type registered by this builder, or one of the primitive types
+     * @return the type's struct, or null if the type wasn't registered by this builder
+     */
+    @SuppressWarnings("unchecked")
+    public <T> LogStruct<T> getStruct(LogEntryType<T> type) {
+        return (LogStruct<T>) m_structs.get(type);
+    }
+
+    /**
+     * Writes every entry made after this call to a WPILib DataLog instead of the growingstems log
+     * file. Must be called before any entries are made, since existing entries keep their output.
+     *
+     * @param backend The DataLog backend to write to, or null to go back to the log file
+     */
+    public void setWpiLogBackend(WpiLogBackend backend) {
+        m_wpiLogBackend = backend;
+    }
+
+    /**
+     * Creates a server to stream entries live with {@link #setStreamServer}. Its records are
+     * stamped by the same time source as the log's records, so the two line up.
+     *
+     * @param port The TCP port to listen on, 0 picks a free port
+     * @param bufferBytes The size of the server's ring buffer
+     * @return the stream server
+     * @throws IOException if the port can't be bound
+     */
+    public LogStreamServer createStreamServer(int port, int bufferBytes) throws IOException {
+        return new LogStreamServer(
+                m_schemaRegistry,
+                port,
+                bufferBytes,
+                () -> (long) (m_timeSource.clockTime().asSeconds() * 1.0e6));
+    }
+
+    /**
+     * Mirrors every entry made after this call to a live stream. Must be called before any entries
+     * are made, since existing entries are not streamed.
+     *
+     * @param server The server to stream to, or null to stop streaming new entries
+     */
+    public void setStreamServer(LogStreamServer server) {
+        m_streamServer = server;
+    }
+
+    @Override
+    public <T> Consumer<T> makeSyncLogEntry(String name, LogEntryType<T> type) {
+        var struct = getStruct(type);
+        Consumer<T> entry = makeOutputEntry(name, type);
+        if (m_streamServer != null && struct != null) {
+            Consumer<T> output = entry;
+            Consumer<T> streamed = m_streamServer.makeEntry(name, struct);
+            entry = value -> {
+                output.accept(value);
+                streamed.accept(value);
+            };
+        }
+
+        return m_bandwidthProfiler.count(name, struct, entry);
+    }
+
+    /**
+     * Makes an entry that encodes each value with its type's struct layout, like the DataLog and
+     * stream entries, and then discards it. Nothing is written, streamed or counted, so the logging
+     * code can be warmed up without adding to the log or writing a file.
+     *
+     * @param <T> The logged type
+     * @param type The type of the entry, which must have a struct layout
+     * @return the consumer to log values with
+     */
+    public <T> Consumer<T> makeDiscardedLogEntry(LogEntryType<T> type) {
+        var struct = getStruct(type);
+        if (struct == null) {
+            throw new IllegalArgumentException("Discarded entries need a struct layout");
+        }
+
+        var buffer = ByteBuffer.allocate(struct.getSize());
+        return value -> {
+            buffer.clear();
+            struct.encode(value, buffer);
+        };
+    }
+
+    private <T> Consumer<T> makeOutputEntry(String name, LogEntryType<T> type) {
+        if (m_wpiLogBackend == null) {
+            return super.makeSyncLogEntry(name, type);
+        }
+
+        var entry = new SegmentedEntry<>(name, type);
+        entry.output = makeWpiLogEntry(name, type, m_wpiLogBackend);
+        m_segmentedEntries.add(entry);
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Consumer<T> makeWpiLogEntry(
+            String name, LogEntryType<T> type, WpiLogBackend backend) {
+        // Primitive types are native DataLog entries, everything else is a struct
+        if (type == doubleType) {
+            return (Consumer<T>) (Consumer<?>) backend.makeDoubleEntry(name);
+        } else if (type == floatType) {
+            return (Consumer<T>) (Consumer<?>) backend.makeFloatEntry(name);
+        } else if (type == integerType) {
+            return (Consumer<T>) (Consumer<?>) backend.makeIntegerEntry(name);
+        }
+
+        var struct = getStruct(type);
+        if (struct == null) {
+            throw new IllegalArgumentException(name + " uses a type that has no struct layout");
+        }
+        return backend.makeStructEntry(name, struct);
+    }
+
+    private <T> void moveEntry(SegmentedEntry<T> entry, WpiLogBackend backend) {
+        entry.output = makeWpiLogEntry(entry.name, entry.type, backend);
+    }
+
+    /**
+     * Ends the current log segment and starts a new one. With the DataLog backend, the new
+     * segment's {@code .wpilog} file is opened in the background, and every entry moves to it on
+     * the first call of {@link #moveToOpenedSegment()} once it is open. The growingstems log file
+     * can't be split, so it keeps being written to and null is returned. Either way the bandwidth
+     * summary of the ending segment is written in the background and the counters are reset.
+     *
+     * @param name The name of the new segment's file, without an extension
+     * @return the new segment's file, or null if no new file is started
+     */
+    public File startSegment(String name) {
+        if (m_wpiLogBackend == null) {
+            endBandwidthSegment(null);
+            return null;
+        }
+
+        var fileName = name + ".wpilog";
+        m_backgroundExecutor.execute(() -> {
+            var skipped = m_openedSegment.getAndSet(new WpiLogBackend(m_logDir, fileName));
+            if (skipped != null) {
+                // Another segment started before the entries moved, so nothing was written to it
+                skipped.close();
+                skipped.getFile().delete();
+            }
+        });
+        return new File(m_logDir, fileName);
+    }
+
+    /**
+     * Moves every entry to the segment started by {@link #startSegment}, once its file is open.
+     * Only the entries' handles are swapped here, the previous file is closed in the background.
+     * Call once per loop from the main thread.
+     */
+    public void moveToOpenedSegment() {
+        var opened = m_openedSegment.getAndSet(null);
+        if (opened == null) {
+            return;
+        }
+
+        var previousBackend = m_wpiLogBackend;
+        m_wpiLogBackend = opened;
+        m_schemaChanged = true;
+        for (int i = 0; i < m_segmentedEntries.size(); i++) {
+            moveEntry(m_segmentedEntries.get(i), opened);
+        }
+        endBandwidthSegment(previousBackend.getFile());
+        m_backgroundExecutor.execute(previousBackend::close);
+    }
+
+    /**
+     * Sets where the file work the main loop shouldn't wait on runs, such as opening and closing
+     * segment files and writing their summaries. Until set, the work runs on the calling thread.
+     *
+     * @param executor Runs the work in the order it is given
+     */
+    public void setBackgroundExecutor(Executor executor) {
+        m_backgroundExecutor = executor;
+    }
+
+    /**
+     * Runs file work on the executor set by {@link #setBackgroundExecutor}, after any segment work
+     * already handed to it.
+     *
+     * @param work The work to run
+     */
+    public void runInBackground(Runnable work) {
+        m_backgroundExecutor.execute(work);
+    }
+
+    /**
+     * Gets the registry holding the layout of every registered type.
+     *
+     * @return the schema registry
+     */
+    public LogSchemaRegistry getSchemaRegistry() {
+        return m_schemaRegistry;
+    }
+
+    /**
+     * Gets the profiler counting the samples and bytes written to every entry.
+     *
+     * @return the bandwidth profiler
+     */
+    public LogBandwidthProfiler getBandwidthProfiler() {
+        return m_bandwidthProfiler;
+    }
+
+    /**
+     * Writes the bandwidth summary table of the current log into the {@value
+     * #k_bandwidthSummaryDir} folder of the log directory, named after the current log file. Called
+     * whenever the robot is disabled and when a log segment ends, so a power cut only loses the
+     * counts since then, and as a last attempt when the robot program exits. May be called from any
+     * thread, the counts are read as they are when the table is made.
+     */
+    public void writeBandwidthSummary() {
+        writeBandwidthSummary(getCurrentLogFile(), m_bandwidthProfiler.snapshot());
+    }
+
+    /**
+     * Copies the counts of the ending segment before resetting them, the table is made and written
+     * in the background.
+     *
+     * @param logFile The ending segment's file, or null to use the log file once in the background
+     */
+    private void endBandwidthSegment(File logFile) {
+        var summary = m_bandwidthProfiler.snapshot();
+        m_bandwidthProfiler.reset();
+        m_backgroundExecutor.execute(() -> writeBandwidthSummary(
+                logFile != null ? logFile : getCurrentLogFile(), summary));
+    }
+
+    private void writeBandwidthSummary(File logFile, LogBandwidthProfiler.Snapshot summary) {
+        if (logFile == null) {
+            return;
+        }
+
+        var summaryFile = getBandwidthSummaryFile(logFile);
+        summaryFile.getParentFile().mkdirs();
+        try (var writer = new FileWriter(summaryFile)) {
+            summary.writeSummary(writer);
+        } catch (IOException e) {
+            System.out.println("Failed to write the log bandwidth summary: " + e.getMessage());
+        }
+    }
+
+    private File getBandwidthSummaryFile(File logFile) {
+        // Kept out of the log directory itself, so it isn't mistaken for a log
+        return new File(
+                new File(m_logDir, k_bandwidthSummaryDir), logFile.getName() + k_sidecarSuffix);
+    }
+
+    /**
+     * Publishes the bandwidth summary table whenever it is requested from the dashboard. The
+     * widgets are created on the first call rather than with the builder, so they aren't part of
+     * startup. Later calls do nothing.
+     */
+    public void publishBandwidthOnRequest() {
+        if (m_bandwidthPublished) {
+            return;
+        }
+        m_bandwidthPublished = true;
+        m_bandwidthProfiler.publishOnRequest(
+                TeleRobot.getLogBandwidthRequest(), TeleRobot.getLogBandwidthSummary());
+    }
+
+    /**
+     * Renames the log file, keeping track of its name so the file being written can be found.
+     * Always use this instead of {@code renameTo()}.
+     *
+     * @param name The new name of the log file
+     */
+    public void renameLog(String name) {
+        synchronized (m_logNameLock) {
+            var previous = getLogFile();
+            renameTo(name);
+            m_logName = name;
+            if (previous != null) {
+                getSchemaFile(previous).delete();
+                // Follows the log to its new name
+                var current = getLogFile();
+                if (current != null) {
+                    getBandwidthSummaryFile(previous).renameTo(getBandwidthSummaryFile(current));
+                }
+            }
+        }
+        m_schemaChanged = true;
+    }
+
+    /**
+     * Writes the layout of every registered type into the {@value #k_schemaDir} folder of the log
+     * directory, named after the current log file, if it changed since it was last written. Types
+     * registered on first use are added once they are. Only written when the layouts are used, by
+     * the DataLog backend or the stream server, the growingstems log defines its types inline.
+     * Called from the log sync thread, so the main loop never waits on the file.
+     */
+    public void writeSchemaIfChanged() {
+        if (!m_schemaChanged || (m_wpiLogBackend == null && m_streamServer == null)) {
+            return;
+        }
+
+        var logFile = getCurrentLogFile();
+        if (logFile == null) {
+            return;
+        }
+
+        // Cleared first, so a type registered while writing is written next time
+        m_schemaChanged = false;
+        var schemaFile = getSchemaFile(logFile);
+        schemaFile.getParentFile().mkdirs();
+        try (var writer = new FileWriter(schemaFile)) {
+            m_schemaRegistry.writeSchema(writer);
+        } catch (IOException e) {
+            m_schemaChanged = true;
+            System.out.println("Failed to write the log schema: " + e.getMessage());
+        }
+    }
+
+    private File getSchemaFile(File logFile) {
+        // Kept out of the log directory itself, so it isn't mistaken for a log
+        return new File(new File(m_logDir, k_schemaDir), logFile.getName() + k_sidecarSuffix);
+    }
+
+    /**
+     * Gets the folders of the log directory holding a sidecar file per log, named after the log
+     * file. A sidecar outlives its log when the log is deleted, so these are pruned by the {@link
+     * LogRetentionManager}.
+     *
+     * @return the sidecar folders
+     */
+    List<File> getSidecarDirs() {
+        return List.of(new File(m_logDir, k_bandwidthSummaryDir), new File(m_logDir, k_schemaDir));
+    }
+
+    /**
+     * Gets the file entries are currently written to. With the DataLog backend this is the current
+     * segment's {@code .wpilog} file, otherwise it is the log file under its current name. May be
+     * called from any thread.
+     *
+     * @return the current log file, or null if it can't be found
+     */
+    public File getCurrentLogFile() {
+        var backend = m_wpiLogBackend;
+        if (backend != null) {
+            return backend.getFile();
+        }
+        return getLogFile();
+    }
+
+    /**
+     * Gets every file still being written by this builder, so they must not be moved or deleted.
+     * The log file stays open even when entries go to the DataLog backend. Finding the log file
+     * lists the log directory, so resolve these once and compare files against them. May be called
+     * from any thread.
+     *
+     * @return the live files, which may be empty if the log file can't be found
+     */
+    public List<File> getLiveLogs() {
+        var live = new ArrayList<File>(2);
+        var backend = m_wpiLogBackend;
+        if (backend != null) {
+            live.add(backend.getFile());
+        }
+        var logFile = getLogFile();
+        if (logFile != null) {
+            live.add(logFile);
+        }
+        return live;
+    }
+
+    /**
+     * Finds the log file by its tracked name. Earlier runs that were never renamed leave files of
+     * the same name behind, so the most recently written one is taken. Files made by the {@link
+     * LogRetentionManager} are never taken.
+     */
+    private File getLogFile() {
+        synchronized (m_logNameLock) {
+            File[] files = m_logDir.listFiles(file -> file.isFile()
+                    && file.getName().startsWith(m_logName)
+                    && !LogRetentionManager.isRetentionFile(file));
+            if (files == null || files.length == 0) {
+                return null;
+            }
+
+            File newest = files[0];
+            for (var file : files) {
+                if (file.lastModified() > newest.lastModified()) {
+                    newest = file;
+                }
+            }
+            return newest;
+        }
+    }
+
+    /**
+     * Gets the type for a cartesian vector in inches, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<Vector2dU<Length>> getVector2dUType_cartesian_in() {
+        if (m_vector2dUType_cartesian_in == null) {
+            m_vector2dUType_cartesian_in = register(
+                    LogStruct.<Vector2dU<Length>>builder("Vector2dU")
+                            .addStruct("X", getStruct(lengthType_in), Vector2dU::getX)
+                            .addStruct("Y", getStruct(lengthType_in), Vector2dU::getY)
+                            .decodeAs(
+                                    Vector2dU.class,
+                                    f -> new Vector2dU<>((Length) f[0], (Length) f[1]))
+                            .build(),
+                    new Vector2dU<Length>(Length.ZERO, Length.ZERO));
+        }
+        return m_vector2dUType_cartesian_in;
+    }
+
+    /**
+     * Gets the type for a cartesian vector in inches per second, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<Vector2dU<Velocity>> getVector2dUType_cartesian_inps() {
+        if (m_vector2dUType_cartesian_inps == null) {
+            m_vector2dUType_cartesian_inps = register(
+                    LogStruct.<Vector2dU<Velocity>>builder("Vector2dU")
+                            .addStruct("X", getStruct(velocityType_inps), Vector2dU::getX)
+                            .addStruct("Y", getStruct(velocityType_inps), Vector2dU::getY)
+                            .decodeAs(
+                                    Vector2dU.class,
+                                    f -> new Vector2dU<>((Velocity) f[0], (Velocity) f[1]))
+                            .build(),
+                    new Vector2dU<Velocity>(Velocity.ZERO, Velocity.ZERO));
+        }
+        return m_vector2dUType_cartesian_inps;
+    }
+
+    /**
+     * Gets the type for a cartesian vector in feet per second, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<Vector2dU<Velocity>> getVector2dUType_cartesian_ftps() {
+        if (m_vector2dUType_cartesian_ftps == null) {
+            m_vector2dUType_cartesian_ftps = register(
+                    LogStruct.<Vector2dU<Velocity>>builder("Vector2dU")
+                            .addStruct("X", getStruct(velocityType_ftps), Vector2dU::getX)
+                            .addStruct("Y", getStruct(velocityType_ftps), Vector2dU::getY)
+                            .decodeAs(
+                                    Vector2dU.class,
+                                    f -> new Vector2dU<>((Velocity) f[0], (Velocity) f[1]))
+                            .build(),
+                    new Vector2dU<Velocity>(Velocity.ZERO, Velocity.ZERO));
+        }
+        return m_vector2dUType_cartesian_ftps;
+    }
+
+    /**
+     * Gets the type for a polar vector in feet per second, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<Vector2dU<Velocity>> getVector2dUType_polar_ftps() {
+        if (m_vector2dUType_polar_ftps == null) {
+            m_vector2dUType_polar_ftps = register(
+                    LogStruct.<Vector2dU<Velocity>>builder("Vector2dU")
+                            .addStruct("Mag", getStruct(velocityType_ftps), Vector2dU::getMagnitude)
+                            .addStruct("Angle", getStruct(angleType_deg), Vector2dU::getAngle)
+                            .decodeAs(Vector2dU.class, f -> {
+                                double mag_ftps = ((Velocity) f[0]).asFeetPerSecond();
+                                double angle_rad = Math.toRadians(((Angle) f[1]).asDegrees());
+                                return new Vector2dU<>(
+                                        Velocity.feetPerSecond(mag_ftps * Math.cos(angle_rad)),
+                                        Velocity.feetPerSecond(mag_ftps * Math.sin(angle_rad)));
+                            })
+                            .build(),
+                    new Vector2dU<Velocity>(Velocity.ZERO, Velocity.ZERO));
+        }
+        return m_vector2dUType_polar_ftps;
+    }
+
+    /**
+     * Gets the type for a cartesian vector in inches per second squared, registering it on first
+     * use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<Vector2dU<Acceleration>> getVector2dUType_cartesian_inps2() {
+        if (m_vector2dUType_cartesian_inps2 == null) {
+            m_vector2dUType_cartesian_inps2 = register(
+                    LogStruct.<Vector2dU<Acceleration>>builder("Vector2dU")
+                            .addStruct("X", getStruct(accelerationType_inps2), Vector2dU::getX)
+                            .addStruct("Y", getStruct(accelerationType_inps2), Vector2dU::getY)
+                            .decodeAs(
+                                    Vector2dU.class,
+                                    f -> new Vector2dU<>((Acceleration) f[0], (Acceleration) f[1]))
+                            .build(),
+                    new Vector2dU<Acceleration>(Acceleration.ZERO, Acceleration.ZERO));
+        }
+        return m_vector2dUType_cartesian_inps2;
+    }
+
+    /**
+     * Gets the type for a pose in inches, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<Pose2dU<Length>> getPose2dUType_in() {
+        if (m_pose2dUType_in == null) {
+            m_pose2dUType_in = register(
+                    LogStruct.<Pose2dU<Length>>builder("Pose2dU")
+                            .addStruct("X", getStruct(lengthType_in), Pose2dU::getX)
+                            .addStruct("Y", getStruct(lengthType_in), Pose2dU::getY)
+                            .addStruct("Heading", getStruct(angleType_deg), Pose2dU::getRotation)
+                            .decodeAs(
+                                    Pose2dU.class,
+                                    f -> new Pose2dU<>((Length) f[0], (Length) f[1], (Angle) f[2]))
+                            .build(),
+                    new Pose2dU<Length>(Length.ZERO, Length.ZERO, Angle.ZERO));
+        }
+        return m_pose2dUType_in;
+    }
+
+    /**
+     * Gets the type for a timestamped pose in inches, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    @SuppressWarnings("unchecked")
+    public LogEntryType<Timestamped<Pose2dU<Length>>> getTimestampedPose2dUType_in() {
+        if (m_timestampedPose2dUType_in == null) {
+            m_timestampedPose2dUType_in = register(
+                    LogStruct.<Timestamped<Pose2dU<Length>>>builder("Timestamped Pose2dU")
+                            .addStruct("Pose2dU", getStruct(getPose2dUType_in()), Timestamped::getData)
+                            .addStruct("Timestamp", getStruct(timeType_s), Timestamped::getTimestamp)
+                            .decodeAs(
+                                    Timestamped.class,
+                                    f -> new Timestamped<>((Pose2dU<Length>) f[0], (Time) f[1]))
+                            .build(),
+                    new Timestamped<Pose2dU<Length>>(
+                            new Pose2dU<Length>(Length.ZERO, Length.ZERO, Angle.ZERO), Time.ZERO));
+        }
+        return m_timestampedPose2dUType_in;
+    }
+
+    /**
+     * Gets the type for a CTRE CAN bus status, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<CANBusStatus> getCanBusStatusType() {
+        if (m_canBusStatusType == null) {
+            m_canBusStatusType = register(
+                    LogStruct.<CANBusStatus>builder("CTRE CAN Status")
+                            .addInteger("Bus Off Count", s -> s.BusOffCount)
+                            .addFloat("Percent Bus Utilization", s -> s.BusUtilization)
+                            .addInteger("Receive Error Count", s -> s.REC)
+                            .addInteger("Transmit Error Count", s -> s.TEC)
+                            .addInteger("TX Full Count", s -> s.TxFullCount)
+                            .decodeAs(CANBusStatus.class, f -> {
+                                var status = new CANBusStatus();
+                                status.BusOffCount = (Integer) f[0];
+                                status.BusUtilization = (Float) f[1];
+                                status.REC = (Integer) f[2];
+                                status.TEC = (Integer) f[3];
+                                status.TxFullCount = (Integer) f[4];
+                                return status;
+                            })
+                            .build(),
+                    new CANBusStatus());
+        }
+        return m_canBusStatusType;
+    }
+
+    /**
+     * Gets the type for a garbage collection event, registering it on first use.
+     *
+     * @return the log entry type
+     */
+    public LogEntryType<GcEvent> getGcEventType() {
+        if (m_gcEventType == null) {
+            m_gcEventType = register(
+                    LogStruct.<GcEvent>builder("GC Event")
+                            .addStruct("Start", getStruct(timeType_s), GcEvent::start)
+                            .addStruct("Duration", getStruct(timeType_ms), GcEvent::duration)
+                            .addStruct("Loop Offset", getStruct(timeType_ms), GcEvent::loopOffset)
+                            .addDouble("Reclaimed kB", GcEvent::reclaimedKB)
+                            .decodeAs(GcEvent.class, f -> new GcEvent(
+                                    (Time) f[0], (Time) f[1], (Time) f[2], (Double) f[3]))
+                            .build(),
+                    new GcEvent(Time.ZERO, Time.ZERO, Time.ZERO, 0.0));
+        }
+        return m_gcEventType;
+    }
+
+    /**
+     * Gets the directory log files are written to.
+     *
+     * @return the log directory
+     */
+    public File getLogDir() {
+        return m_logDir;
     }
 }
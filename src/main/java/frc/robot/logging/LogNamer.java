@@ -45,21 +45,9 @@ public class LogNamer extends Command {
         if (!DriverStation.isFMSAttached()) {
             m_fmsAttachedTimer.reset();
         } else if (m_fmsAttachedTimer.hasElapsed(k_fmsTimeRequired)) {
-            DriverStation.MatchType matchType = DriverStation.getMatchType();
-            if (matchType != DriverStation.MatchType.None) {
-                char matchTypeChar =
-                        switch (matchType) {
-                            case Practice -> 'P';
-                            case Qualification -> 'Q';
-                            case Elimination -> 'E';
-                            default -> '_';
-                        };
-                m_builder.renameTo(k_formatter.format(LocalDateTime.now(k_utc))
-                        + "_"
-                        + DriverStation.getEventName()
-                        + "_"
-                        + matchTypeChar
-                        + DriverStation.getMatchNumber());
+            String matchName = getMatchName();
+            if (matchName != null) {
+                m_builder.renameLog(matchName);
                 m_isFinished = true;
                 return;
             }
@@ -70,12 +58,48 @@ public class LogNamer extends Command {
         } else if (!m_renamedToDateTime && m_dsAttachedTimer.hasElapsed(k_dsTimeRequired)) {
             LocalDateTime now = LocalDateTime.now(k_utc);
             if (now.getYear() > 0) {
-                m_builder.renameTo(k_formatter.format(now));
+                m_builder.renameLog(getDateTimeName());
                 m_renamedToDateTime = true;
             }
         }
     }
 
+    /**
+     * Gets a log name made of the current date and time, i.e. "2024-03-02_14-05-59".
+     *
+     * @return the date and time log name
+     */
+    public static String getDateTimeName() {
+        return k_formatter.format(LocalDateTime.now(k_utc));
+    }
+
+    /**
+     * Gets a log name identifying the current match from the FMS data, i.e.
+     * "2024-03-02_14-05-59_MIKE2_Q12". Only valid while the FMS is attached.
+     *
+     * @return the match log name, or null if the match type is unknown
+     */
+    public static String getMatchName() {
+        DriverStation.MatchType matchType = DriverStation.getMatchType();
+        if (matchType == DriverStation.MatchType.None) {
+            return null;
+        }
+
+        char matchTypeChar =
+                switch (matchType) {
+                    case Practice -> 'P';
+                    case Qualification -> 'Q';
+                    case Elimination -> 'E';
+                    default -> '_';
+                };
+        return getDateTimeName()
+                + "_"
+                + DriverStation.getEventName()
+                + "_"
+                + matchTypeChar
+                + DriverStation.getMatchNumber();
+    }
+
     @Override
     public boolean runsWhenDisabled() {
         return true;
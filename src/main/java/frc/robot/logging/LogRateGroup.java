@@ -0,0 +1,57 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+/**
+ * A group of log entries that share a logging rate. Entries in the group are only logged on loops
+ * where the group is active, which is every loop by default and every Nth loop when the group is
+ * slowed down.
+ *
+ * <p>{@link #update()} must be called once per loop before any entry in the group is logged.
+ */
+public class LogRateGroup {
+    private final String m_name;
+    private int m_divisor = 1;
+    private int m_counter = 0;
+
+    public LogRateGroup(String name) {
+        m_name = name;
+    }
+
+    /** Advances the group by one loop. */
+    public void update() {
+        m_counter++;
+        if (m_counter >= m_divisor) {
+            m_counter = 0;
+        }
+    }
+
+    /**
+     * Whether entries in the group should be logged this loop.
+     *
+     * @return true if the group is active this loop
+     */
+    public boolean isActive() {
+        return m_counter == 0;
+    }
+
+    /**
+     * Sets how many loops pass between each logged loop.
+     *
+     * @param divisor 1 logs every loop, 5 logs every fifth loop
+     */
+    public void setDivisor(int divisor) {
+        m_divisor = Math.max(divisor, 1);
+        m_counter = 0;
+    }
+
+    public int getDivisor() {
+        return m_divisor;
+    }
+
+    public String getName() {
+        return m_name;
+    }
+}
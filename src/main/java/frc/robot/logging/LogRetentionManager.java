@@ -0,0 +1,224 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import org.growingstems.measurements.Measurements.Time;
+
+/**
+ * Keeps the log directory from filling the roboRIO's flash. Runs on a low priority background
+ * thread, only while the robot is disabled, and compresses at most one log per scan.
+ *
+ * <ul>
+ *   <li>Match logs (named {@code _P}, {@code _Q} or {@code _E} followed by the match number by
+ *       {@link LogNamer} or {@link LogSessionManager}) are always kept untouched.
+ *   <li>Other logs are compressed once they are old enough. Compression is throttled and is
+ *       abandoned if the robot enables. The compressed log is written under a temporary name and
+ *       only renamed once complete.
+ *   <li>Other logs are deleted, oldest first, once they are too old or while the directory is over
+ *       its size budget.
+ *   <li>The live log, as tracked by {@link LogBuilder#getLiveLogs}, is never touched.
+ *   <li>Sidecar files, like the schema and bandwidth summary, are deleted once their log is gone.
+ * </ul>
+ */
+public class LogRetentionManager {
+    private static final Pattern k_matchLogPattern = Pattern.compile(".*_[PQE]\\d+(\\..*)?");
+    private static final String k_compressedSuffix = ".gz";
+    // Compressed files are written under a temporary name, then renamed once complete
+    private static final String k_partialSuffix = ".tmp";
+
+    private static final Time k_scanPeriod = Time.seconds(10.0);
+    private static final Time k_compressAge = Time.seconds(10.0 * 60.0);
+    private static final Time k_maxAge = Time.seconds(14.0 * 24.0 * 60.0 * 60.0);
+    private static final long k_maxTotalBytes = 512L * 1024L * 1024L;
+
+    // Compression throttling, about 256 kB/s
+    private static final int k_chunkBytes = 64 * 1024;
+    private static final Time k_chunkPeriod = Time.milliseconds(250.0);
+
+    private final LogBuilder m_builder;
+    private final File m_logDir;
+    private final Thread m_thread;
+
+    public LogRetentionManager(LogBuilder builder) {
+        m_builder = builder;
+        m_logDir = builder.getLogDir();
+
+        m_thread = new Thread(this::run, "Log Retention");
+        m_thread.setDaemon(true);
+        m_thread.setPriority(Thread.MIN_PRIORITY);
+        m_thread.start();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep((long) k_scanPeriod.asMilliseconds());
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (!DriverStation.isDisabled()) {
+                continue;
+            }
+
+            try {
+                runOnce();
+            } catch (IOException e) {
+                System.out.println("Log retention failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes every log due to be pruned and the sidecars of deleted logs, then performs at most
+     * one compression.
+     */
+    private void runOnce() throws IOException {
+        File[] listed = m_logDir.listFiles(File::isFile);
+        if (listed == null) {
+            return;
+        }
+
+        // Resolved once, each lookup lists the directory again
+        var live = m_builder.getLiveLogs();
+        long now_ms = System.currentTimeMillis();
+        long totalBytes = 0;
+        var files = new ArrayList<File>();
+        for (var file : listed) {
+            totalBytes += file.length();
+            // Anything written since the last scan is left alone as well, in case the live log
+            // can't be found
+            boolean recent = now_ms - file.lastModified() < k_scanPeriod.asMilliseconds();
+            if (recent || live.contains(file)) {
+                continue;
+            }
+
+            // Only this thread compresses, so a partial file is left over from an abandoned run
+            if (file.getName().endsWith(k_partialSuffix)) {
+                long length = file.length();
+                if (file.delete()) {
+                    totalBytes -= length;
+                }
+                continue;
+            }
+            files.add(file);
+        }
+        // Oldest first
+        files.sort(Comparator.comparingLong(File::lastModified));
+
+        // Pruning takes priority over compressing, it frees the most space
+        var remaining = new ArrayList<File>();
+        for (var file : files) {
+            boolean tooOld = now_ms - file.lastModified() > k_maxAge.asMilliseconds();
+            if (isMatchLog(file) || !(tooOld || totalBytes > k_maxTotalBytes)) {
+                remaining.add(file);
+                continue;
+            }
+
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+                System.out.println("Log retention deleted " + file.getName());
+            }
+        }
+
+        pruneSidecars(now_ms);
+
+        for (var file : remaining) {
+            if (isMatchLog(file) || file.getName().endsWith(k_compressedSuffix)) {
+                continue;
+            }
+
+            if (now_ms - file.lastModified() > k_compressAge.asMilliseconds()) {
+                compress(file);
+                return;
+            }
+        }
+    }
+
+    /** Deletes the sidecar files whose log, compressed or not, no longer exists. */
+    private void pruneSidecars(long now_ms) {
+        for (var dir : m_builder.getSidecarDirs()) {
+            File[] sidecars = dir.listFiles(file ->
+                    file.isFile() && file.getName().endsWith(LogBuilder.k_sidecarSuffix));
+            if (sidecars == null) {
+                continue;
+            }
+
+            for (var sidecar : sidecars) {
+                // Left alone while recent like the logs. A lost sidecar is rewritten anyway, the
+                // schema on the next sync and the bandwidth summary on the next disable.
+                if (now_ms - sidecar.lastModified() < k_scanPeriod.asMilliseconds()) {
+                    continue;
+                }
+
+                var name = sidecar.getName();
+                var logName =
+                        name.substring(0, name.length() - LogBuilder.k_sidecarSuffix.length());
+                if (!new File(m_logDir, logName).exists()
+                        && !new File(m_logDir, logName + k_compressedSuffix).exists()
+                        && sidecar.delete()) {
+                    System.out.println("Log retention deleted the sidecar " + name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a file was made by the retention manager, so it isn't the log being written.
+     *
+     * @param file A file in the log directory
+     * @return true if the file is a compressed log or one being compressed
+     */
+    static boolean isRetentionFile(File file) {
+        var name = file.getName();
+        return name.endsWith(k_compressedSuffix) || name.endsWith(k_partialSuffix);
+    }
+
+    private static boolean isMatchLog(File file) {
+        return k_matchLogPattern.matcher(file.getName()).matches();
+    }
+
+    private void compress(File file) throws IOException {
+        var compressed = new File(file.getParentFile(), file.getName() + k_compressedSuffix);
+        var partial = new File(file.getParentFile(), compressed.getName() + k_partialSuffix);
+        boolean complete = false;
+        try (var in = new FileInputStream(file);
+                var out = new GZIPOutputStream(new FileOutputStream(partial))) {
+            byte[] buffer = new byte[k_chunkBytes];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+
+                // Give the disk back to the robot as soon as it enables
+                if (!DriverStation.isDisabled()) {
+                    break;
+                }
+                Thread.sleep((long) k_chunkPeriod.asMilliseconds());
+            }
+            complete = read <= 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (complete && partial.renameTo(compressed)) {
+            // Keep the original's age so that pruning still goes by when the log was written
+            compressed.setLastModified(file.lastModified());
+            file.delete();
+            System.out.println("Log retention compressed " + file.getName());
+        } else {
+            partial.delete();
+        }
+    }
+}
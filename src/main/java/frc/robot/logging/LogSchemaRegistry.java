@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Assigns compact numeric IDs to {@link LogStruct} layouts. Structs with identical layouts share an
+ * ID and type name, and structs that share a name but not a layout are given unique type names
+ * (i.e. {@code Vector2dU}, {@code Vector2dU_2}) so the schema of every type can be written once
+ * per file and referred to by ID afterwards.
+ *
+ * <p>Types may be registered on first use while other threads write the schema, so access is
+ * synchronized.
+ */
+public class LogSchemaRegistry {
+    private final ArrayList<LogStruct<?>> m_schemas = new ArrayList<>();
+    private final HashMap<String, LogStruct<?>> m_byLayout = new HashMap<>();
+    private final HashMap<String, Integer> m_nameCounts = new HashMap<>();
+
+    /**
+     * Registers a struct, assigning its ID, type name and schema. Nested structs must be registered
+     * first.
+     *
+     * @param struct The struct to register
+     * @return the struct's ID
+     */
+    public synchronized int register(LogStruct<?> struct) {
+        if (struct.getId() >= 0) {
+            return struct.getId();
+        }
+
+        var schema = buildSchema(struct);
+        var existing = m_byLayout.get(schema);
+        if (existing != null) {
+            struct.assign(existing.getId(), existing.getTypeName(), schema);
+            return existing.getId();
+        }
+
+        var name = sanitize(struct.getName());
+        int count = m_nameCounts.merge(name, 1, Integer::sum);
+        var typeName = count == 1 ? name : name + "_" + count;
+
+        int id = m_schemas.size();
+        struct.assign(id, typeName, schema);
+        m_schemas.add(struct);
+        m_byLayout.put(schema, struct);
+        return id;
+    }
+
+    private static String buildSchema(LogStruct<?> struct) {
+        var schema = new StringBuilder();
+        for (var field : struct.getFields()) {
+            if (field.getType() == LogStruct.FieldType.STRUCT) {
+                if (field.getStruct().getId() < 0) {
+                    throw new IllegalStateException("Nested struct " + field.getStruct().getName()
+                            + " must be registered before " + struct.getName());
+                }
+                schema.append(field.getStruct().getTypeName());
+            } else {
+                schema.append(field.getType().getSchemaName());
+            }
+            schema.append(' ').append(sanitize(field.getName())).append(';');
+        }
+        return schema.toString();
+    }
+
+    private static String sanitize(String name) {
+        return name.trim().replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /**
+     * Gets every unique layout, indexed by ID.
+     *
+     * @return a copy of the registered layouts
+     */
+    public synchronized List<LogStruct<?>> getSchemas() {
+        return new ArrayList<>(m_schemas);
+    }
+
+    /**
+     * Writes every unique layout, one per line as {@code id typeName size schema}. Call once per
+     * file, and again whenever a type is registered.
+     *
+     * @param writer The writer to write the schema to
+     * @throws IOException if the writer fails
+     */
+    public synchronized void writeSchema(Writer writer) throws IOException {
+        for (var struct : m_schemas) {
+            writer.write(struct.getId() + " " + struct.getTypeName() + " " + struct.getSize() + " "
+                    + struct.getSchema() + "\n");
+        }
+        writer.flush();
+    }
+}
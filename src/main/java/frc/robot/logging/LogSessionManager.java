@@ -0,0 +1,163 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Splits the log into one segment per match, so match logs stay small and quick to copy and open
+ * in the pits. A segment starts when autonomous is enabled with the FMS attached, named with the
+ * match info from {@link LogNamer#getMatchName()}. It ends once teleop is no longer enabled, or
+ * early if the FMS detaches or autonomous is enabled again before teleop, i.e. a replayed match.
+ * What follows the match goes into its own segment named with the date and time.
+ *
+ * <p>Each match gets a small index file in the {@value #k_indexDir} folder of the log directory
+ * describing the match and where its segment is. With the DataLog backend every segment is its own
+ * file. The growingstems log file can't be split, so it keeps being written and its index records
+ * the log's timestamps at the start and end of the match instead, to find the match within the
+ * file. The index is written again when the match ends, naming the log file as it is by then, so
+ * it follows the file if {@link LogNamer} renames it during the match.
+ *
+ * <p>Segments start on the first loop of autonomous, so the files, the index and the messages are
+ * all written on the log's background thread.
+ *
+ * <p>Must be scheduled to run, it runs while disabled and never finishes.
+ */
+public class LogSessionManager extends Command {
+    private static final String k_indexDir = "segments";
+
+    private final LogBuilder m_builder;
+    private boolean m_inMatch = false;
+    private boolean m_autonomousEnded = false;
+    private boolean m_teleopEnabled = false;
+
+    // Current match
+    private String m_segmentName = null;
+    private File m_segmentFile = null;
+    private double m_startTimestamp_s = 0.0;
+
+    public LogSessionManager(LogBuilder builder) {
+        m_builder = builder;
+    }
+
+    @Override
+    public void execute() {
+        boolean autonomousEnabled = DriverStation.isAutonomousEnabled();
+        if (!m_inMatch) {
+            if (autonomousEnabled && DriverStation.isFMSAttached()) {
+                startMatch();
+            }
+            return;
+        }
+
+        if (!DriverStation.isFMSAttached()) {
+            endMatch("FMS detached");
+            return;
+        }
+        if (autonomousEnabled && m_autonomousEnded) {
+            endMatch("Autonomous restarted");
+            startMatch();
+            return;
+        }
+        if (!autonomousEnabled) {
+            m_autonomousEnded = true;
+        }
+
+        // Teleop always follows a disabled period after autonomous, so the match is only over
+        // once teleop has been enabled and then stopped
+        if (DriverStation.isTeleopEnabled()) {
+            m_teleopEnabled = true;
+        } else if (m_teleopEnabled) {
+            endMatch("Teleop ended");
+            return;
+        }
+    }
+
+    private void startMatch() {
+        m_segmentName = LogNamer.getMatchName();
+        if (m_segmentName == null) {
+            m_segmentName = LogNamer.getDateTimeName() + "_Match";
+        }
+
+        m_segmentFile = m_builder.startSegment(m_segmentName);
+        m_startTimestamp_s = WPIUtilJNI.now() * 1.0e-6;
+        m_inMatch = true;
+        m_autonomousEnded = false;
+        m_teleopEnabled = false;
+
+        writeIndex(null, 0.0);
+        var message = "********** Log segment started: " + m_segmentName + " **********";
+        m_builder.runInBackground(() -> System.out.println(message));
+    }
+
+    private void endMatch(String reason) {
+        double endTimestamp_s = WPIUtilJNI.now() * 1.0e-6;
+        writeIndex(reason, endTimestamp_s);
+
+        m_builder.startSegment(LogNamer.getDateTimeName() + "_Post");
+        m_inMatch = false;
+        m_autonomousEnded = false;
+        m_teleopEnabled = false;
+        var message =
+                "********** Log segment ended: " + m_segmentName + ", " + reason + " **********";
+        m_builder.runInBackground(() -> System.out.println(message));
+    }
+
+    /**
+     * Writes the index of the current match. The match info is read here, the file is written in
+     * the background.
+     *
+     * @param endReason Why the match ended, or null while it is running
+     * @param endTimestamp_s The log timestamp the match ended at
+     */
+    private void writeIndex(String endReason, double endTimestamp_s) {
+        var matchInfo = "segment=" + m_segmentName + "\n"
+                + "event=" + DriverStation.getEventName() + "\n"
+                + "matchType=" + DriverStation.getMatchType() + "\n"
+                + "matchNumber=" + DriverStation.getMatchNumber() + "\n"
+                + "replayNumber=" + DriverStation.getReplayNumber() + "\n"
+                + "alliance=" + DriverStation.getAlliance().map(Enum::name).orElse("Unknown")
+                + DriverStation.getLocation().orElse(0) + "\n";
+        var segmentInfo = "separateFile=" + (m_segmentFile != null) + "\n"
+                + "startTimestamp_s=" + m_startTimestamp_s + "\n"
+                + "ended=" + (endReason != null) + "\n";
+        var endInfo = endReason == null
+                ? ""
+                : "endReason=" + endReason + "\n" + "endTimestamp_s=" + endTimestamp_s + "\n";
+        var segmentFile = m_segmentFile;
+        // Kept out of the log directory itself, so the index isn't mistaken for a log
+        var indexDir = new File(m_builder.getLogDir(), k_indexDir);
+        var indexFile = new File(indexDir, m_segmentName + ".txt");
+
+        m_builder.runInBackground(() -> {
+            // Finding the growingstems log file lists the log directory, so it is done here
+            File logFile = segmentFile != null ? segmentFile : m_builder.getCurrentLogFile();
+            indexDir.mkdirs();
+            try (var writer = new FileWriter(indexFile)) {
+                writer.write(matchInfo);
+                writer.write("file=" + (logFile == null ? "" : logFile.getName()) + "\n");
+                writer.write(segmentInfo);
+                writer.write(endInfo);
+            } catch (IOException e) {
+                System.out.println("Failed to write the log segment index: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+        return true;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return false;
+    }
+}
@@ -0,0 +1,324 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Streams encoded log records to a single TCP client, e.g. a desktop client, so the full
+ * rate log can be watched live during practice.
+ *
+ * <p>Records are encoded on the logging thread into a bounded ring buffer and written to the
+ * socket by a background thread using non-blocking writes. When the client can't keep up and a
+ * frame doesn't fit in the ring buffer, the whole frame is dropped so the logging thread never
+ * blocks. Nothing is encoded while no client is connected.
+ *
+ * <p>All values are big endian. Every frame is an int32 length of the rest of the frame followed by
+ * a one byte frame type:
+ *
+ * <ul>
+ *   <li>{@value #k_schemaFrame}: int32 struct ID, int32 struct size, UTF type name, UTF schema
+ *   <li>{@value #k_entryFrame}: int32 entry ID, int32 struct ID, UTF entry name
+ *   <li>{@value #k_recordFrame}: int32 entry ID, int64 timestamp in microseconds, struct payload
+ * </ul>
+ *
+ * Schema and entry frames for everything that already exists are sent when a client connects.
+ * Types may be registered after a client connects, the schema frames of any new types are sent
+ * ahead of the next entry frame, so a client always has an entry's schema before its records.
+ * Entries must all be made and logged from the same thread.
+ */
+public class LogStreamServer implements AutoCloseable {
+    public static final byte k_schemaFrame = 0;
+    public static final byte k_entryFrame = 1;
+    public static final byte k_recordFrame = 2;
+
+    private static final int k_recordHeaderBytes = Integer.BYTES + 1 + Integer.BYTES + Long.BYTES;
+    private static final long k_idleSleep_ms = 2;
+
+    private final LogSchemaRegistry m_schemaRegistry;
+    private final LongSupplier m_timestampSource_us;
+    private final ServerSocketChannel m_serverChannel;
+    private final Thread m_thread;
+
+    // Ring buffer, head is only written by the logging thread and tail by the stream thread
+    private final byte[] m_ring;
+    private volatile long m_head = 0;
+    private volatile long m_tail = 0;
+    private volatile boolean m_connected = false;
+    private volatile long m_droppedFrames = 0;
+
+    // Logging thread state
+    private final CopyOnWriteArrayList<byte[]> m_schemaDefinitions = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<byte[]> m_entryDefinitions = new CopyOnWriteArrayList<>();
+    private int m_entryCount = 0;
+    private ByteBuffer m_scratch = ByteBuffer.allocate(256);
+
+    /**
+     * Starts listening for a client. Created by {@link LogBuilder#createStreamServer}, which stamps
+     * records with the log's time source.
+     *
+     * @param schemaRegistry The registry of every struct that will be streamed
+     * @param port The TCP port to listen on, 0 picks a free port
+     * @param bufferBytes The size of the ring buffer
+     * @param timestampSource_us Gives the timestamp of each record, in microseconds
+     * @throws IOException if the port can't be bound
+     */
+    LogStreamServer(
+            LogSchemaRegistry schemaRegistry,
+            int port,
+            int bufferBytes,
+            LongSupplier timestampSource_us)
+            throws IOException {
+        m_schemaRegistry = schemaRegistry;
+        m_timestampSource_us = timestampSource_us;
+        m_ring = new byte[bufferBytes];
+
+        m_serverChannel = ServerSocketChannel.open();
+        m_serverChannel.bind(new InetSocketAddress(port));
+        m_serverChannel.configureBlocking(false);
+
+        m_thread = new Thread(this::run, "Log Stream");
+        m_thread.setDaemon(true);
+        m_thread.setPriority(Thread.MIN_PRIORITY);
+        m_thread.start();
+    }
+
+    /**
+     * Makes a streamed entry. The returned consumer encodes each value into the ring buffer.
+     *
+     * @param <T> The logged type
+     * @param name The name of the entry
+     * @param struct The registered layout of the logged type
+     * @return the consumer to log values with
+     */
+    public <T> Consumer<T> makeEntry(String name, LogStruct<T> struct) {
+        addNewSchemas();
+
+        int entryId = m_entryCount++;
+        var definition = encodeFrame(k_entryFrame, out -> {
+            out.writeInt(entryId);
+            out.writeInt(struct.getId());
+            out.writeUTF(name);
+        });
+
+        // Added to the list before the ring, so a client connecting in between sees it at least
+        // once
+        m_entryDefinitions.add(definition);
+        if (m_connected) {
+            writeFrame(ByteBuffer.wrap(definition));
+        }
+
+        int recordBytes = k_recordHeaderBytes + struct.getSize();
+        if (m_scratch.capacity() < recordBytes) {
+            m_scratch = ByteBuffer.allocate(recordBytes);
+        }
+
+        return value -> writeRecord(entryId, struct, value);
+    }
+
+    /** Encodes the schemas registered since the last entry was made, in ID order. */
+    private void addNewSchemas() {
+        var schemas = m_schemaRegistry.getSchemas();
+        for (int i = m_schemaDefinitions.size(); i < schemas.size(); i++) {
+            var struct = schemas.get(i);
+            var definition = encodeFrame(k_schemaFrame, out -> {
+                out.writeInt(struct.getId());
+                out.writeInt(struct.getSize());
+                out.writeUTF(struct.getTypeName());
+                out.writeUTF(struct.getSchema());
+            });
+
+            // Same as entries, added to the list before the ring
+            m_schemaDefinitions.add(definition);
+            if (m_connected) {
+                writeFrame(ByteBuffer.wrap(definition));
+            }
+        }
+    }
+
+    private <T> void writeRecord(int entryId, LogStruct<T> struct, T value) {
+        if (!m_connected) {
+            return;
+        }
+
+        var scratch = m_scratch;
+        scratch.clear();
+        scratch.putInt(k_recordHeaderBytes - Integer.BYTES + struct.getSize());
+        scratch.put(k_recordFrame);
+        scratch.putInt(entryId);
+        scratch.putLong(m_timestampSource_us.getAsLong());
+        struct.encode(value, scratch);
+        scratch.flip();
+        writeFrame(scratch);
+    }
+
+    /** Copies a whole frame into the ring buffer, or drops it if it doesn't fit. */
+    private void writeFrame(ByteBuffer frame) {
+        int length = frame.remaining();
+        long head = m_head;
+        if (length > m_ring.length - (head - m_tail)) {
+            m_droppedFrames++;
+            return;
+        }
+
+        int position = (int) (head % m_ring.length);
+        int firstPart = Math.min(length, m_ring.length - position);
+        frame.get(m_ring, position, firstPart);
+        frame.get(m_ring, 0, length - firstPart);
+        m_head = head + length;
+    }
+
+    private interface FrameWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encodeFrame(byte frameType, FrameWriter writer) {
+        try {
+            var body = new ByteArrayOutputStream();
+            var out = new DataOutputStream(body);
+            out.writeByte(frameType);
+            writer.write(out);
+
+            var frame = new ByteArrayOutputStream();
+            new DataOutputStream(frame).writeInt(body.size());
+            body.writeTo(frame);
+            return frame.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer encodeDefinitions() {
+        // Schemas first, every entry's schema is in the list before the entry is
+        var definitions = new ByteArrayOutputStream();
+        for (var definition : m_schemaDefinitions) {
+            definitions.writeBytes(definition);
+        }
+        for (var definition : m_entryDefinitions) {
+            definitions.writeBytes(definition);
+        }
+        return ByteBuffer.wrap(definitions.toByteArray());
+    }
+
+    private void run() {
+        var ringView = ByteBuffer.wrap(m_ring);
+        SocketChannel client = null;
+        ByteBuffer definitions = null;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (client == null) {
+                    client = m_serverChannel.accept();
+                    if (client != null) {
+                        client.configureBlocking(false);
+                        client.socket().setTcpNoDelay(true);
+                        // Skip anything queued for a previous client. The head is always on a
+                        // frame boundary.
+                        m_tail = m_head;
+                        // Connected before the definitions are encoded, so a definition added
+                        // in between is either encoded or written to the ring, or both
+                        m_connected = true;
+                        definitions = encodeDefinitions();
+                    }
+                }
+
+                int written = 0;
+                if (client != null) {
+                    if (definitions.hasRemaining()) {
+                        written = client.write(definitions);
+                    } else {
+                        long tail = m_tail;
+                        long available = m_head - tail;
+                        if (available > 0) {
+                            int position = (int) (tail % m_ring.length);
+                            int length = (int) Math.min(available, m_ring.length - position);
+                            ringView.limit(position + length).position(position);
+                            written = client.write(ringView);
+                            m_tail = tail + written;
+                        }
+                    }
+                }
+
+                if (written == 0) {
+                    Thread.sleep(k_idleSleep_ms);
+                }
+            } catch (IOException e) {
+                // Client went away, wait for the next one
+                m_connected = false;
+                closeQuietly(client);
+                client = null;
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        // Closed
+        m_connected = false;
+        closeQuietly(client);
+    }
+
+    private static void closeQuietly(SocketChannel client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Stops streaming, disconnecting the client and releasing the port. Nothing is encoded once
+     * closed, so entries may still be logged to.
+     */
+    @Override
+    public void close() {
+        m_thread.interrupt();
+        try {
+            m_thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            m_serverChannel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return the TCP port
+     */
+    public int getPort() {
+        return m_serverChannel.socket().getLocalPort();
+    }
+
+    public boolean isConnected() {
+        return m_connected;
+    }
+
+    /**
+     * Gets the number of frames dropped because the client couldn't keep up.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrameCount() {
+        return m_droppedFrames;
+    }
+}
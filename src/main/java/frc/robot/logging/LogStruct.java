@@ -0,0 +1,382 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * A fixed layout description of a logged type. Every field has a precomputed byte offset, so a
+ * value can be encoded straight into a buffer without any per record metadata. Structs are the
+ * single source for the group types registered in {@link LogBuilder} and are given a numeric ID
+ * by a {@link LogSchemaRegistry}.
+ *
+ * @param <T> The type being described
+ */
+public final class LogStruct<T> {
+    /** The primitive types a field can be encoded as. */
+    public enum FieldType {
+        DOUBLE("double", Double.BYTES),
+        FLOAT("float", Float.BYTES),
+        INT32("int32", Integer.BYTES),
+        STRUCT(null, 0);
+
+        private final String m_schemaName;
+        private final int m_size;
+
+        FieldType(String schemaName, int size) {
+            m_schemaName = schemaName;
+            m_size = size;
+        }
+
+        public String getSchemaName() {
+            return m_schemaName;
+        }
+
+        public int getSize() {
+            return m_size;
+        }
+    }
+
+    /**
+     * Rebuilds a value of a struct from its decoded fields.
+     *
+     * @param <T> The type being described
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        /**
+         * Creates a value.
+         *
+         * @param fields The fields in layout order. Each is a {@code Double}, {@code Float}, {@code
+         *     Integer} or the value of a nested struct.
+         * @return the value
+         */
+        T create(Object[] fields);
+    }
+
+    /**
+     * A single field of a struct.
+     *
+     * @param <T> The type of the struct the field belongs to
+     */
+    public static final class Field<T> {
+        private final String m_name;
+        private final FieldType m_type;
+        private final int m_offset;
+        private final ToDoubleFunction<T> m_doubleGetter;
+        private final ToIntFunction<T> m_intGetter;
+        private final LogStruct<?> m_struct;
+        private final Function<T, ?> m_structGetter;
+
+        private Field(
+                String name,
+                FieldType type,
+                int offset,
+                ToDoubleFunction<T> doubleGetter,
+                ToIntFunction<T> intGetter,
+                LogStruct<?> struct,
+                Function<T, ?> structGetter) {
+            m_name = name;
+            m_type = type;
+            m_offset = offset;
+            m_doubleGetter = doubleGetter;
+            m_intGetter = intGetter;
+            m_struct = struct;
+            m_structGetter = structGetter;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        public FieldType getType() {
+            return m_type;
+        }
+
+        /**
+         * Gets the offset of the field from the start of the struct.
+         *
+         * @return the offset in bytes
+         */
+        public int getOffset() {
+            return m_offset;
+        }
+
+        public int getSize() {
+            return m_type == FieldType.STRUCT ? m_struct.getSize() : m_type.getSize();
+        }
+
+        /**
+         * Gets the struct describing the field. Only set for {@link FieldType#STRUCT} fields.
+         *
+         * @return the field's struct, or null
+         */
+        public LogStruct<?> getStruct() {
+            return m_struct;
+        }
+
+        public double getDouble(T value) {
+            return m_doubleGetter.applyAsDouble(value);
+        }
+
+        public int getInt(T value) {
+            return m_intGetter.applyAsInt(value);
+        }
+
+        public Object getStructValue(T value) {
+            return m_structGetter.apply(value);
+        }
+    }
+
+    /**
+     * Builds a struct field by field, in the order the fields are laid out.
+     *
+     * @param <T> The type being described
+     */
+    public static final class Builder<T> {
+        private final String m_name;
+        private final ArrayList<Field<T>> m_fields = new ArrayList<>();
+        private int m_size = 0;
+        private Class<? super T> m_typeClass = null;
+        private Factory<T> m_factory = null;
+
+        private Builder(String name) {
+            m_name = name;
+        }
+
+        private Builder<T> add(Field<T> field) {
+            m_fields.add(field);
+            m_size += field.getSize();
+            return this;
+        }
+
+        public Builder<T> addDouble(String name, ToDoubleFunction<T> getter) {
+            return add(new Field<>(name, FieldType.DOUBLE, m_size, getter, null, null, null));
+        }
+
+        public Builder<T> addFloat(String name, ToDoubleFunction<T> getter) {
+            return add(new Field<>(name, FieldType.FLOAT, m_size, getter, null, null, null));
+        }
+
+        public Builder<T> addInteger(String name, ToIntFunction<T> getter) {
+            return add(new Field<>(name, FieldType.INT32, m_size, null, getter, null, null));
+        }
+
+        public <M> Builder<T> addStruct(String name, LogStruct<M> struct, Function<T, M> getter) {
+            return add(new Field<>(name, FieldType.STRUCT, m_size, null, null, struct, getter));
+        }
+
+        /**
+         * Allows the struct to be decoded.
+         *
+         * @param typeClass The class of the type. For generic types this is the raw class, i.e.
+         *     {@code Vector2dU.class}.
+         * @param factory Creates a value from its decoded fields
+         * @return this
+         */
+        public Builder<T> decodeAs(Class<? super T> typeClass, Factory<T> factory) {
+            m_typeClass = typeClass;
+            m_factory = factory;
+            return this;
+        }
+
+        public LogStruct<T> build() {
+            return new LogStruct<>(m_name, m_fields, m_size, m_typeClass, m_factory);
+        }
+    }
+
+    private final String m_name;
+    private final List<Field<T>> m_fields;
+    private final int m_size;
+    private final Class<? super T> m_typeClass;
+    private final Factory<T> m_factory;
+
+    // Assigned by a LogSchemaRegistry
+    private int m_id = -1;
+    private String m_typeName;
+    private String m_schema;
+
+    private LogStruct(
+            String name,
+            List<Field<T>> fields,
+            int size,
+            Class<? super T> typeClass,
+            Factory<T> factory) {
+        m_name = name;
+        m_fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        m_size = size;
+        m_typeClass = typeClass;
+        m_factory = factory;
+        m_typeName = name;
+    }
+
+    /**
+     * Starts building a struct.
+     *
+     * @param <T> The type being described
+     * @param name The name of the type, does not need to be unique
+     * @return a builder for the struct
+     */
+    public static <T> Builder<T> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    /**
+     * Encodes a value into a buffer at the buffer's position, advancing the position by {@link
+     * #getSize()}. The caller sets the buffer's byte order.
+     *
+     * @param value The value to encode
+     * @param buffer The buffer to encode into
+     */
+    public void encode(T value, ByteBuffer buffer) {
+        int base = buffer.position();
+        encode(value, buffer, base);
+        buffer.position(base + m_size);
+    }
+
+    /** Every field is written at its precomputed offset from the start of the struct. */
+    private void encode(T value, ByteBuffer buffer, int base) {
+        for (int i = 0; i < m_fields.size(); i++) {
+            var field = m_fields.get(i);
+            int index = base + field.getOffset();
+            switch (field.getType()) {
+                case DOUBLE -> buffer.putDouble(index, field.getDouble(value));
+                case FLOAT -> buffer.putFloat(index, (float) field.getDouble(value));
+                case INT32 -> buffer.putInt(index, field.getInt(value));
+                case STRUCT -> encodeNested(
+                        field.getStruct(), field.getStructValue(value), buffer, index);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M> void encodeNested(
+            LogStruct<M> struct, Object value, ByteBuffer buffer, int base) {
+        struct.encode((M) value, buffer, base);
+    }
+
+    /**
+     * Decodes a value from a buffer at the buffer's position, advancing the position by {@link
+     * #getSize()}. The reverse of {@link #encode}, the caller sets the buffer's byte order.
+     *
+     * @param buffer The buffer to decode from
+     * @return the decoded value
+     * @throws IllegalStateException if the struct, or a nested struct, can't be decoded
+     */
+    public T decode(ByteBuffer buffer) {
+        int base = buffer.position();
+        T value = decode(buffer, base);
+        buffer.position(base + m_size);
+        return value;
+    }
+
+    private T decode(ByteBuffer buffer, int base) {
+        if (m_factory == null) {
+            throw new IllegalStateException(m_name + " was not built to be decoded");
+        }
+
+        var fields = new Object[m_fields.size()];
+        for (int i = 0; i < m_fields.size(); i++) {
+            var field = m_fields.get(i);
+            int index = base + field.getOffset();
+            fields[i] = switch (field.getType()) {
+                case DOUBLE -> buffer.getDouble(index);
+                case FLOAT -> buffer.getFloat(index);
+                case INT32 -> buffer.getInt(index);
+                case STRUCT -> field.getStruct().decode(buffer, index);
+            };
+        }
+        return m_factory.create(fields);
+    }
+
+    /**
+     * Whether the struct can be decoded.
+     *
+     * @return true if the struct and every nested struct were built with {@link Builder#decodeAs}
+     */
+    public boolean isDecodable() {
+        if (m_factory == null) {
+            return false;
+        }
+        for (var field : m_fields) {
+            if (field.getType() == FieldType.STRUCT && !field.getStruct().isDecodable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the class of the described type.
+     *
+     * @return the type's class, the raw class for generic types, or null if the struct can't be
+     *     decoded
+     */
+    public Class<? super T> getTypeClass() {
+        return m_typeClass;
+    }
+
+    /**
+     * Gets the name the struct was built with. Several different structs can share a name.
+     *
+     * @return the struct's name
+     */
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Gets the unique name assigned to the struct's layout when it was registered.
+     *
+     * @return the struct's unique type name
+     */
+    public String getTypeName() {
+        return m_typeName;
+    }
+
+    /**
+     * Gets the numeric ID assigned to the struct's layout when it was registered. Structs with
+     * identical layouts share an ID.
+     *
+     * @return the struct's ID, or -1 if not registered
+     */
+    public int getId() {
+        return m_id;
+    }
+
+    /**
+     * Gets the layout of the struct, in the WPILib struct schema format.
+     *
+     * @return the struct's schema, or null if not registered
+     */
+    public String getSchema() {
+        return m_schema;
+    }
+
+    public List<Field<T>> getFields() {
+        return m_fields;
+    }
+
+    /**
+     * Gets the encoded size of the struct.
+     *
+     * @return the size in bytes
+     */
+    public int getSize() {
+        return m_size;
+    }
+
+    void assign(int id, String typeName, String schema) {
+        m_id = id;
+        m_typeName = typeName;
+        m_schema = schema;
+    }
+}
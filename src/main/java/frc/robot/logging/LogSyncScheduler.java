@@ -0,0 +1,160 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.library.RobotRunnerBase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.growingstems.frc.util.WpiTimeSource;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.util.timer.Timer;
+
+/**
+ * Schedules when the log file is synced to disk, so that the filesystem work lands while the robot
+ * is disabled or while the main thread is sleeping, and never during autonomous. The sync itself
+ * runs on a low priority background thread, which also writes the log's schema file when a type
+ * has been registered. {@link #update()} only decides whether to wake that thread and does not
+ * block.
+ *
+ * <p>Other file writes the main thread would otherwise wait on are handed to the same thread with
+ * {@link #submit}. Unlike syncs they run as soon as they are submitted, autonomous included, so
+ * they should be kept to small writes.
+ *
+ * <p>{@link #update()} should be called from {@link RobotRunnerBase#sleepInit()} so that the sync
+ * overlaps with the main thread's sleep.
+ */
+public class LogSyncScheduler {
+    private static final Time k_disabledSyncPeriod = Time.seconds(1.0);
+    private static final Time k_enabledSyncPeriod = Time.seconds(5.0);
+    // Only sync while enabled when the loop left plenty of slack
+    private static final Time k_maxExecutionTimeForSync = Time.milliseconds(10.0);
+
+    private final LogBuilder m_builder;
+    private final RobotRunnerBase m_runner;
+    private final Thread m_syncThread;
+    private final Timer m_syncTimer;
+
+    private volatile boolean m_syncing = false;
+    private final AtomicLong m_lastSyncDuration_us = new AtomicLong(-1);
+    private final ConcurrentLinkedQueue<Runnable> m_backgroundWork = new ConcurrentLinkedQueue<>();
+
+    // Logging
+    private final Consumer<Time> m_logSyncTime;
+
+    public LogSyncScheduler(LogBuilder builder, RobotRunnerBase runner) {
+        m_builder = builder;
+        m_runner = runner;
+
+        m_syncTimer = new WpiTimeSource().createTimer();
+        m_syncTimer.start();
+
+        m_syncThread = new Thread(this::runSyncThread, "Log Sync");
+        m_syncThread.setDaemon(true);
+        m_syncThread.setPriority(Thread.MIN_PRIORITY);
+        m_syncThread.start();
+        // Opening and closing log segments and writing their summaries are done here too
+        builder.setBackgroundExecutor(this::submit);
+
+        // -------------
+        //    Logging
+        // -------------
+        m_logSyncTime = builder.makeSyncLogEntry("Timing/Log Sync", builder.timeType_ms);
+    }
+
+    /** Wakes the sync thread if a sync is due and the robot has time for it. Call once per loop. */
+    public void update() {
+        // Log entries aren't thread safe, so the sync thread hands its duration back
+        long lastSyncDuration_us = m_lastSyncDuration_us.getAndSet(-1);
+        if (lastSyncDuration_us >= 0) {
+            m_logSyncTime.accept(Time.seconds(lastSyncDuration_us * 1.0e-6));
+        }
+
+        if (m_syncing || DriverStation.isAutonomousEnabled()) {
+            return;
+        }
+
+        Time period;
+        if (DriverStation.isDisabled()) {
+            period = k_disabledSyncPeriod;
+        } else if (m_runner.getMainExecutionTime().asSeconds()
+                < k_maxExecutionTimeForSync.asSeconds()) {
+            period = k_enabledSyncPeriod;
+        } else {
+            return;
+        }
+
+        if (!m_syncTimer.hasElapsed(period)) {
+            return;
+        }
+        m_syncTimer.reset();
+
+        m_syncing = true;
+        LockSupport.unpark(m_syncThread);
+    }
+
+    /**
+     * Runs work on the sync thread instead of the calling thread. Work runs in the order it was
+     * submitted, before any sync that is due. May be called from any thread.
+     *
+     * @param work The work to run
+     */
+    public void submit(Runnable work) {
+        m_backgroundWork.add(work);
+        LockSupport.unpark(m_syncThread);
+    }
+
+    private void runSyncThread() {
+        while (true) {
+            LockSupport.park(this);
+            runBackgroundWork();
+            if (!m_syncing) {
+                // Only woken for work, or a spurious wake up
+                continue;
+            }
+
+            long start_us = WPIUtilJNI.now();
+            m_builder.writeSchemaIfChanged();
+            syncCurrentLog();
+            m_lastSyncDuration_us.set(WPIUtilJNI.now() - start_us);
+            m_syncing = false;
+        }
+    }
+
+    private void runBackgroundWork() {
+        Runnable work;
+        while ((work = m_backgroundWork.poll()) != null) {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                // The thread must outlive a failed write, or nothing would be synced again
+                DriverStation.reportError("Log background work failed: " + e, e.getStackTrace());
+            }
+        }
+    }
+
+    private void syncCurrentLog() {
+        // Found by the name LogNamer last gave it, never a file being compressed
+        File logFile = m_builder.getCurrentLogFile();
+        if (logFile == null) {
+            return;
+        }
+
+        // fsync applies to the file, not the descriptor, so a separate channel flushes the log
+        // builder's writes as well
+        try (var channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Failed to sync log file: " + e.getMessage(), false);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.FloatLogEntry;
+import edu.wpi.first.util.datalog.IntegerLogEntry;
+import edu.wpi.first.util.datalog.StructLogEntry;
+import edu.wpi.first.util.struct.Struct;
+import java.io.File;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import org.growingstems.measurements.Measurements.Time;
+
+/**
+ * Writes log entries to a WPILib DataLog ({@code .wpilog}) file instead of the growingstems log
+ * format, so logs can be opened by WPILib's tools without converting them first. Group types are
+ * written as struct typed entries using the layouts from {@link LogBuilder#getStruct}. Entry
+ * handles are created once when the entry is made. The DataLog writes to disk on its own
+ * background thread.
+ */
+public class WpiLogBackend {
+    private static final Time k_flushPeriod = Time.seconds(0.25);
+
+    private final File m_file;
+    private final DataLog m_log;
+    private final HashMap<LogStruct<?>, WpiLogStruct<?>> m_structs = new HashMap<>();
+
+    /**
+     * Opens a new DataLog file.
+     *
+     * @param logDir The directory to write the file to
+     * @param fileName The name of the file, with the {@code .wpilog} extension
+     */
+    public WpiLogBackend(File logDir, String fileName) {
+        m_file = new File(logDir, fileName);
+        m_log = new DataLog(logDir.getPath(), fileName, k_flushPeriod.asSeconds());
+    }
+
+    public <T> Consumer<T> makeStructEntry(String name, LogStruct<T> struct) {
+        var entry = StructLogEntry.create(m_log, name, getWpiStruct(struct));
+        return entry::append;
+    }
+
+    public Consumer<Double> makeDoubleEntry(String name) {
+        var entry = new DoubleLogEntry(m_log, name);
+        return entry::append;
+    }
+
+    public Consumer<Float> makeFloatEntry(String name) {
+        var entry = new FloatLogEntry(m_log, name);
+        return entry::append;
+    }
+
+    public Consumer<Integer> makeIntegerEntry(String name) {
+        var entry = new IntegerLogEntry(m_log, name);
+        return value -> entry.append(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> WpiLogStruct<T> getWpiStruct(LogStruct<T> struct) {
+        var wpiStruct = (WpiLogStruct<T>) m_structs.get(struct);
+        if (wpiStruct != null) {
+            return wpiStruct;
+        }
+
+        // Nested structs are created first so their schemas are written before they are used
+        int nestedCount = 0;
+        for (var field : struct.getFields()) {
+            if (field.getType() == LogStruct.FieldType.STRUCT) {
+                nestedCount++;
+            }
+        }
+        var nested = new Struct<?>[nestedCount];
+        int index = 0;
+        for (var field : struct.getFields()) {
+            if (field.getType() == LogStruct.FieldType.STRUCT) {
+                nested[index++] = getWpiStruct(field.getStruct());
+            }
+        }
+
+        wpiStruct = new WpiLogStruct<>(struct, nested);
+        m_structs.put(struct, wpiStruct);
+        return wpiStruct;
+    }
+
+    /**
+     * Gets the underlying DataLog.
+     *
+     * @return the DataLog being written to
+     */
+    public DataLog getDataLog() {
+        return m_log;
+    }
+
+    /**
+     * Gets the file being written to.
+     *
+     * @return the DataLog file
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    /** Flushes and closes the DataLog file. */
+    public void close() {
+        m_log.close();
+    }
+}
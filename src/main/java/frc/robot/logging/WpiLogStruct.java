@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import edu.wpi.first.util.struct.Struct;
+import java.nio.ByteBuffer;
+
+/**
+ * Exposes a registered {@link LogStruct} as a WPILib {@link Struct} so it can be written to a
+ * DataLog as a struct typed entry, and read back from one.
+ *
+ * @param <T> The type being described
+ */
+class WpiLogStruct<T> implements Struct<T> {
+    private final LogStruct<T> m_struct;
+    private final Struct<?>[] m_nested;
+
+    WpiLogStruct(LogStruct<T> struct, Struct<?>[] nested) {
+        if (struct.getId() < 0) {
+            throw new IllegalArgumentException(struct.getName() + " has not been registered");
+        }
+        if (!struct.isDecodable()) {
+            throw new IllegalArgumentException(struct.getName() + " can't be decoded");
+        }
+        m_struct = struct;
+        m_nested = nested;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<T> getTypeClass() {
+        // Generic types, i.e. Vector2dU<Length>, only have a raw class
+        return (Class<T>) m_struct.getTypeClass();
+    }
+
+    @Override
+    public String getTypeString() {
+        return "struct:" + m_struct.getTypeName();
+    }
+
+    @Override
+    public int getSize() {
+        return m_struct.getSize();
+    }
+
+    @Override
+    public String getSchema() {
+        return m_struct.getSchema();
+    }
+
+    @Override
+    public Struct<?>[] getNested() {
+        return m_nested;
+    }
+
+    @Override
+    public T unpack(ByteBuffer bb) {
+        return m_struct.decode(bb);
+    }
+
+    @Override
+    public void pack(ByteBuffer bb, T value) {
+        m_struct.encode(value, bb);
+    }
+}
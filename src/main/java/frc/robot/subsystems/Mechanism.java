@@ -0,0 +1,25 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.subsystems;
+
+import frc.library.command.LiteCommandRunner;
+
+/** Every mechanism on the robot, used as requirement bits for the {@link LiteCommandRunner}. */
+public enum Mechanism {
+    INTAKE_ROLLERS,
+    COLLECTOR_ROLLERS,
+    SERIALIZER_ROLLERS,
+    FEEDER_ROLLERS,
+    ELEVATOR_ROLLERS;
+
+    /**
+     * Gets the requirement bit for this mechanism.
+     *
+     * @return a bitmask containing only this mechanism
+     */
+    public long getRequirement() {
+        return LiteCommandRunner.requirement(ordinal());
+    }
+}
@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.subsystems;
+
+import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.util.WPIUtilJNI;
+import frc.library.AllocationMeter;
+import frc.robot.Telemetry;
+import frc.robot.Telemetry.TeleAllocation;
+import frc.robot.logging.LogBuilder;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the {@code update()} of every registered subsystem HAL once per loop and accounts for the
+ * bytes each one allocates and the time it takes. The per subsystem allocation is published to the
+ * log and dashboard so the mechanism generating garbage can be found. The allocation is logged only
+ * when it changes, so that logging it doesn't allocate every loop.
+ */
+public class SubsystemRegistry {
+    private static class Registration {
+        final String name;
+        final Runnable update;
+        final Consumer<Integer> logAllocatedBytes;
+        final Consumer<LongSupplier> logUpdateTime;
+        final GenericEntry dashboardAllocatedBytes;
+        // Created once so that logging the update time doesn't allocate every loop
+        final LongSupplier updateTimeSupplier = () -> updateTime_us;
+        long updateTime_us = 0;
+        long allocatedBytes = 0;
+        long loggedAllocatedBytes = -1;
+
+        Registration(
+                String name,
+                Runnable update,
+                Consumer<Integer> logAllocatedBytes,
+                Consumer<LongSupplier> logUpdateTime,
+                GenericEntry dashboardAllocatedBytes) {
+            this.name = name;
+            this.update = update;
+            this.logAllocatedBytes = logAllocatedBytes;
+            this.logUpdateTime = logUpdateTime;
+            this.dashboardAllocatedBytes = dashboardAllocatedBytes;
+        }
+    }
+
+    private final LogBuilder m_builder;
+    private final ArrayList<Registration> m_registrations = new ArrayList<>();
+
+    public SubsystemRegistry(LogBuilder builder) {
+        m_builder = builder;
+    }
+
+    /**
+     * Registers a subsystem to be updated every loop.
+     *
+     * @param name The name the subsystem is logged and displayed as, i.e. "Collector Rollers"
+     * @param update The subsystem's update function, i.e. {@code hal::update}
+     */
+    public void register(String name, Runnable update) {
+        m_registrations.add(new Registration(
+                name,
+                update,
+                m_builder.makeSyncLogEntry(
+                        "Allocation/Subsystems/" + name + " (B)", m_builder.integerType),
+                m_builder.makeSyncLogEntry(
+                        "Timing/Subsystems/" + name, m_builder.microsecondTimeType_ms),
+                TeleAllocation.addSubsystem(name, m_registrations.size())));
+    }
+
+    /** Updates every registered subsystem in registration order. Call once per loop. */
+    public void update() {
+        // Indexed loop to avoid creating an iterator every loop
+        for (int i = 0; i < m_registrations.size(); i++) {
+            var registration = m_registrations.get(i);
+
+            long start_us = WPIUtilJNI.now();
+            long allocationStart = AllocationMeter.getCurrentThreadAllocatedBytes();
+            registration.update.run();
+            registration.allocatedBytes =
+                    AllocationMeter.getCurrentThreadAllocatedBytes() - allocationStart;
+            registration.updateTime_us = WPIUtilJNI.now() - start_us;
+            registration.logUpdateTime.accept(registration.updateTimeSupplier);
+
+            // Logging boxes the value, so it is only logged when it changes. A subsystem at steady
+            // state allocates the same every loop, ideally zero, which is also a cached Integer.
+            if (registration.allocatedBytes != registration.loggedAllocatedBytes) {
+                registration.loggedAllocatedBytes = registration.allocatedBytes;
+                registration.logAllocatedBytes.accept((int) registration.allocatedBytes);
+            }
+            if (!Telemetry.isNonEssentialPaused()) {
+                registration.dashboardAllocatedBytes.setDouble(registration.allocatedBytes);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes a subsystem allocated during its last update.
+     *
+     * @param name The name the subsystem was registered with
+     * @return bytes allocated by the subsystem's last update, or zero if it isn't registered
+     */
+    public long getAllocatedBytes(String name) {
+        for (int i = 0; i < m_registrations.size(); i++) {
+            var registration = m_registrations.get(i);
+            if (registration.name.equals(name)) {
+                return registration.allocatedBytes;
+            }
+        }
+        return 0;
+    }
+}
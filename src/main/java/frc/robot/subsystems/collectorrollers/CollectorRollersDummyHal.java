@@ -4,6 +4,8 @@
 
 package frc.robot.subsystems.collectorrollers;
 
+import org.growingstems.measurements.Measurements.AngularVelocity;
+import org.growingstems.measurements.Measurements.Current;
 import org.growingstems.measurements.Measurements.Voltage;
 
 public class CollectorRollersDummyHal implements CollectorRollersHalI {
@@ -12,11 +14,21 @@ public class CollectorRollersDummyHal implements CollectorRollersHalI {
         // NOP
     }
 
+    @Override
+    public void setVelocity(AngularVelocity velocity) {
+        // NOP
+    }
+
     @Override
     public void setIntendedNeutralMode() {
         // NOP
     }
 
+    @Override
+    public void refreshSignals() {
+        // NOP
+    }
+
     @Override
     public void update() {
         // NOP
@@ -31,4 +43,19 @@ public class CollectorRollersDummyHal implements CollectorRollersHalI {
     public void coast() {
         // NOP
     }
+
+    @Override
+    public double getStatorCurrent_A() {
+        return 0.0;
+    }
+
+    @Override
+    public double getStatorCurrentTimestamp_s() {
+        return 0.0;
+    }
+
+    @Override
+    public Current getCompensatedStatorCurrent() {
+        return Current.ZERO;
+    }
 }
@@ -6,16 +6,24 @@ import com.ctre.phoenix6.configs.MotorOutputConfigs;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
 import com.ctre.phoenix6.configs.TalonFXConfigurator;
 import com.ctre.phoenix6.controls.CoastOut;
+import com.ctre.phoenix6.controls.ControlRequest;
+import com.ctre.phoenix6.controls.MotionMagicVelocityVoltage;
 import com.ctre.phoenix6.controls.StaticBrake;
 import com.ctre.phoenix6.hardware.TalonFX;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import frc.library.CtreUtils;
+import frc.library.StartupTimeline;
+import frc.library.TalonFxRegistry;
+import frc.library.TimestampedSignal;
+import frc.library.TimestampedValue;
+import frc.library.VelocityGains;
 import frc.robot.Robot;
 import frc.robot.logging.LogBuilder;
 import java.util.function.Consumer;
 import org.growingstems.control.actuators.MotorActuator;
 import org.growingstems.frc.actuators.TalonFxActuator;
+import org.growingstems.measurements.Measurements.AngularVelocity;
 import org.growingstems.measurements.Measurements.Current;
 import org.growingstems.measurements.Measurements.Voltage;
 
@@ -25,6 +33,7 @@ public class ElevatorRollersHal implements ElevatorRollersHalI {
     private final MotorActuator m_actuator;
     private final TalonFX m_motor;
     private final TalonFXConfigurator m_configurator;
+    private final TalonFxRegistry m_registry;
 
     // Motor Configuration
     private static final int k_canId = 18;
@@ -34,19 +43,47 @@ public class ElevatorRollersHal implements ElevatorRollersHalI {
     private static final Current k_supplyCurrentLimit = Current.amps(25.0);
     private static final Current k_statorCurrentLimit = Current.amps(120.0);
 
+    private final MotionMagicVelocityVoltage m_velocityRequest =
+            new MotionMagicVelocityVoltage(0.0).withSlot(0);
+    private double m_velocitySetpoint_rps = Double.NaN;
+
+    // Open Loop Control
+    // The last requested power, re-applied when the output scale changes
+    private double m_power_V = Double.NaN;
+    private double m_appliedOutputScale = 1.0;
+
+    // Neutral Control Requests
+    private final ControlRequest m_intendedNeutralModeRequest =
+            CtreUtils.getControlRequest(k_intendedNeutralMode);
+    private final StaticBrake m_brakeRequest = new StaticBrake();
+    private final CoastOut m_coastRequest = new CoastOut();
+
     //
 
+    // Status Signals
+    private final TimestampedSignal m_motorVoltage;
+    private final TimestampedSignal m_supplyCurrent;
+    private final TimestampedSignal m_statorCurrent;
+    private final BaseStatusSignal[] m_updateSignals;
+
     // Logging
-    private final Consumer<Voltage> m_logPower;
-    private final Consumer<Current> m_logSupplyCurrent;
-    private final Consumer<Current> m_logStatorCurrent;
+    private final Consumer<TimestampedValue> m_logPower;
+    private final Consumer<TimestampedValue> m_logSupplyCurrent;
+    private final Consumer<TimestampedValue> m_logStatorCurrent;
+
+    public ElevatorRollersHal(LogBuilder builder, TalonFxRegistry registry) {
+        this(builder, registry, VelocityGains.k_rollerDefaults);
+    }
+
+    public ElevatorRollersHal(LogBuilder builder, TalonFxRegistry registry, VelocityGains gains) {
+        long constructionStart = StartupTimeline.start();
 
-    public ElevatorRollersHal(LogBuilder builder) {
         // --------------------
         //    Motor Settings
         // --------------------
         m_motor = new TalonFX(k_canId, Robot.k_canivoreCan);
         m_configurator = m_motor.getConfigurator();
+        m_registry = registry;
 
         // Reset to Factory Defaults
         var configuration = new TalonFXConfiguration();
@@ -64,6 +101,9 @@ public class ElevatorRollersHal implements ElevatorRollersHalI {
         currentLimits.StatorCurrentLimit = k_statorCurrentLimit.asAmps();
         configuration.withCurrentLimits(currentLimits);
 
+        // Velocity Control
+        gains.apply(configuration);
+
         m_configurator.apply(configuration, CtreUtils.k_defaultConfiguratorTimeout.asSeconds());
 
         // ----------------------------
@@ -78,6 +118,7 @@ public class ElevatorRollersHal implements ElevatorRollersHalI {
                 m_motor.getSupplyVoltage(),
                 m_motor.getMotorVoltage(),
                 m_motor.getSupplyCurrent(),
+                m_motor.getStatorCurrent(),
                 m_motor.getTorqueCurrent());
         // 4 Hz Rate (every 100ms)
         BaseStatusSignal.setUpdateFrequencyForAll(
@@ -89,6 +130,21 @@ public class ElevatorRollersHal implements ElevatorRollersHalI {
                 m_motor.getStickyFaultField());
         m_motor.optimizeBusUtilization();
 
+        // Current limits may be shared out at runtime. Signals that aren't needed for control are
+        // slowed down when the CAN bus is busy.
+        registry.register("Elevator Rollers", m_motor)
+                .withCurrentLimits(k_supplyCurrentLimit, k_statorCurrentLimit)
+                .withLowPrioritySignals(100, 10, m_motor.getAcceleration())
+                .withLowPrioritySignals(
+                        4, 0, m_motor.getProcessorTemp(), m_motor.getAncillaryDeviceTemp());
+
+        m_motorVoltage = new TimestampedSignal(m_motor.getMotorVoltage());
+        m_supplyCurrent = new TimestampedSignal(m_motor.getSupplyCurrent());
+        m_statorCurrent = new TimestampedSignal(m_motor.getStatorCurrent());
+        m_updateSignals = new BaseStatusSignal[] {
+            m_motorVoltage.getSignal(), m_supplyCurrent.getSignal(), m_statorCurrent.getSignal()
+        };
+
         // -----------------------
         //    Actuator Settings
         // -----------------------
@@ -97,38 +153,110 @@ public class ElevatorRollersHal implements ElevatorRollersHalI {
         // -------------
         //    Logging
         // -------------
-        m_logPower = builder.makeSyncLogEntry("Elevator/Roller/Power", builder.voltageType_volts);
-        m_logSupplyCurrent =
-                builder.makeSyncLogEntry("Elevator/Roller/Supply Current", builder.currentType_amps);
-        m_logStatorCurrent =
-                builder.makeSyncLogEntry("Elevator/Roller/Stator Current", builder.currentType_amps);
+        m_logPower = builder.makeSyncLogEntry(
+                "Elevator/Roller/Power", builder.timestampedVoltageType_volts);
+        m_logSupplyCurrent = builder.makeSyncLogEntry(
+                "Elevator/Roller/Supply Current", builder.timestampedCurrentType_amps);
+        m_logStatorCurrent = builder.makeSyncLogEntry(
+                "Elevator/Roller/Stator Current", builder.timestampedCurrentType_amps);
+
+        StartupTimeline.record("Elevator Rollers HAL", constructionStart);
+    }
+
+    @Override
+    public void refreshSignals() {
+        BaseStatusSignal.refreshAll(m_updateSignals);
     }
 
     @Override
     public void update() {
+        // A change of output scale takes effect straight away, not on the next setPower()
+        if (!Double.isNaN(m_power_V) && m_registry.getOutputScale() != m_appliedOutputScale) {
+            applyPower();
+        }
+
         // Logging
-        m_logPower.accept(Voltage.volts(m_motor.getMotorVoltage().getValueAsDouble()));
-        m_logSupplyCurrent.accept(Current.amps(m_motor.getSupplyCurrent().getValueAsDouble()));
-        m_logStatorCurrent.accept(Current.amps(m_motor.getStatorCurrent().getValueAsDouble()));
+        // The signals are logged as they are, and only when a new frame arrived
+        if (m_motorVoltage.sample()) {
+            m_logPower.accept(m_motorVoltage);
+        }
+        if (m_supplyCurrent.sample()) {
+            m_logSupplyCurrent.accept(m_supplyCurrent);
+        }
+        if (m_statorCurrent.sample()) {
+            m_logStatorCurrent.accept(m_statorCurrent);
+        }
+    }
+
+    @Override
+    public double getStatorCurrent_A() {
+        return m_statorCurrent.getValue();
+    }
+
+    @Override
+    public double getStatorCurrentTimestamp_s() {
+        return m_statorCurrent.getTimestamp_s();
+    }
+
+    @Override
+    public Current getCompensatedStatorCurrent() {
+        return Current.amps(m_statorCurrent.getCompensatedValue());
     }
 
     @Override
     public void setPower(Voltage power) {
-        m_actuator.setOutputVoltage(power);
+        m_velocitySetpoint_rps = Double.NaN;
+        m_power_V = power.asVolts();
+        applyPower();
+    }
+
+    private void applyPower() {
+        // Scaled down when the robot is shedding load
+        m_appliedOutputScale = m_registry.getOutputScale();
+        if (m_registry.isControlSuppressed()) {
+            return;
+        }
+        m_actuator.setOutputVoltage(Voltage.volts(m_power_V * m_appliedOutputScale));
+    }
+
+    @Override
+    public void setVelocity(AngularVelocity velocity) {
+        double velocity_rps = velocity.asRevolutionsPerMinute() / 60.0;
+        // The motor controller keeps running the last request, so only changes are sent
+        if (velocity_rps == m_velocitySetpoint_rps) {
+            return;
+        }
+
+        m_velocitySetpoint_rps = velocity_rps;
+        m_power_V = Double.NaN;
+        setControl(m_velocityRequest.withVelocity(velocity_rps));
     }
 
     @Override
     public void setIntendedNeutralMode() {
-        m_motor.setControl(CtreUtils.getControlRequest(k_intendedNeutralMode));
+        m_velocitySetpoint_rps = Double.NaN;
+        m_power_V = Double.NaN;
+        setControl(m_intendedNeutralModeRequest);
     }
 
     @Override
     public void brake() {
-        m_motor.setControl(new StaticBrake());
+        m_velocitySetpoint_rps = Double.NaN;
+        m_power_V = Double.NaN;
+        setControl(m_brakeRequest);
     }
 
     @Override
     public void coast() {
-        m_motor.setControl(new CoastOut());
+        m_velocitySetpoint_rps = Double.NaN;
+        m_power_V = Double.NaN;
+        setControl(m_coastRequest);
+    }
+
+    private void setControl(ControlRequest request) {
+        // Held back while the control code is warmed up
+        if (!m_registry.isControlSuppressed()) {
+            m_motor.setControl(request);
+        }
     }
 }
@@ -0,0 +1,250 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.subsystems.handoff;
+
+import frc.library.CurrentSpikeDetector;
+import frc.library.CurrentSpikeDetector.Edge;
+import frc.library.command.LiteCommand;
+import frc.robot.logging.LogBuilder;
+import frc.robot.subsystems.Mechanism;
+import frc.robot.subsystems.collectorrollers.CollectorRollersHalI;
+import frc.robot.subsystems.elevator.rollers.ElevatorRollersHalI;
+import frc.robot.subsystems.feeder.FeederRollersHalI;
+import frc.robot.subsystems.intake.rollers.IntakeRollersHalI;
+import frc.robot.subsystems.serializer.SerializerRollersHalI;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import org.growingstems.measurements.Measurements.Current;
+import org.growingstems.measurements.Measurements.Time;
+import org.growingstems.measurements.Measurements.Voltage;
+
+/**
+ * Coordinates moving a game piece through the roller chain: intake, collector, serializer, feeder
+ * and then elevator rollers. Every roller's 100 Hz stator current is run through a {@link
+ * CurrentSpikeDetector}. When a piece is detected entering a roller, the next roller in the chain is
+ * spun up so it is already at speed when the piece arrives, and a roller is stopped once the piece
+ * has left it.
+ *
+ * <p>The handoff is driven by {@link #getCommand()}, which requires every roller mechanism. Robot
+ * schedules it on the lite command runner whenever the robot is enabled in auto or teleop while the
+ * handoff is idle. It runs every main loop rather than at the command scheduler's period, and each
+ * detector skips samples it has already seen, so every CAN frame is processed exactly once as it
+ * arrives.
+ */
+public class GamePieceHandoff {
+    /** State of the handoff. */
+    public enum State {
+        /** Not running, all rollers stopped. */
+        IDLE,
+        /** Intake and collector running, waiting for a piece to enter the intake. */
+        INTAKING,
+        /** A piece is moving through the chain. */
+        HANDOFF,
+        /** The piece reached the elevator rollers and all rollers are stopped. */
+        HOLDING
+    }
+
+    private static final Voltage k_feedVoltage = Voltage.volts(6.0);
+    private static final Current k_spikeThreshold = Current.amps(8.0);
+    private static final Current k_releaseThreshold = Current.amps(3.0);
+    private static final Time k_debounceTime = Time.milliseconds(20.0);
+    private static final Time k_baselineTimeConstant = Time.seconds(0.5);
+    // Ignore the inrush current while a roller spins up
+    private static final double k_spinUpTime_s = 0.15;
+
+    private static class Stage {
+        final DoubleSupplier statorCurrent_A;
+        final DoubleSupplier statorCurrentTimestamp_s;
+        final Consumer<Voltage> setPower;
+        final CurrentSpikeDetector detector = new CurrentSpikeDetector(
+                k_spikeThreshold, k_releaseThreshold, k_debounceTime, k_baselineTimeConstant);
+        boolean running = false;
+        double runningSince_s = 0.0;
+
+        Stage(
+                DoubleSupplier statorCurrent_A,
+                DoubleSupplier statorCurrentTimestamp_s,
+                Consumer<Voltage> setPower) {
+            this.statorCurrent_A = statorCurrent_A;
+            this.statorCurrentTimestamp_s = statorCurrentTimestamp_s;
+            this.setPower = setPower;
+        }
+    }
+
+    private final Stage[] m_stages;
+    private final LiteCommand m_command;
+
+    private State m_state = State.IDLE;
+    // Index of the stage the piece is currently in, -1 if no piece
+    private int m_pieceStage = -1;
+
+    // Logging
+    private final Consumer<Integer> m_logState;
+    private final Consumer<Integer> m_logPieceStage;
+
+    public GamePieceHandoff(
+            LogBuilder builder,
+            IntakeRollersHalI intake,
+            CollectorRollersHalI collector,
+            SerializerRollersHalI serializer,
+            FeederRollersHalI feeder,
+            ElevatorRollersHalI elevator) {
+        m_stages = new Stage[] {
+            new Stage(
+                    intake::getStatorCurrent_A, intake::getStatorCurrentTimestamp_s, intake::setPower),
+            new Stage(
+                    collector::getStatorCurrent_A,
+                    collector::getStatorCurrentTimestamp_s,
+                    collector::setPower),
+            new Stage(
+                    serializer::getStatorCurrent_A,
+                    serializer::getStatorCurrentTimestamp_s,
+                    serializer::setPower),
+            new Stage(
+                    feeder::getStatorCurrent_A, feeder::getStatorCurrentTimestamp_s, feeder::setPower),
+            new Stage(
+                    elevator::getStatorCurrent_A,
+                    elevator::getStatorCurrentTimestamp_s,
+                    elevator::setPower)
+        };
+
+        long requirements = Mechanism.INTAKE_ROLLERS.getRequirement()
+                | Mechanism.COLLECTOR_ROLLERS.getRequirement()
+                | Mechanism.SERIALIZER_ROLLERS.getRequirement()
+                | Mechanism.FEEDER_ROLLERS.getRequirement()
+                | Mechanism.ELEVATOR_ROLLERS.getRequirement();
+        m_command = new LiteCommand("Game Piece Handoff", requirements) {
+            @Override
+            public void initialize() {
+                start();
+            }
+
+            @Override
+            public void execute() {
+                update();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return m_state == State.HOLDING;
+            }
+
+            @Override
+            public void end(boolean interrupted) {
+                stopAll();
+                if (interrupted) {
+                    m_state = State.IDLE;
+                    m_pieceStage = -1;
+                }
+            }
+        };
+
+        // -------------
+        //    Logging
+        // -------------
+        m_logState = builder.makeSyncLogEntry("Handoff/State", builder.integerType);
+        m_logPieceStage = builder.makeSyncLogEntry("Handoff/Piece Stage", builder.integerType);
+    }
+
+    /**
+     * Gets the preallocated command that runs the handoff until the piece reaches the elevator
+     * rollers.
+     *
+     * @return the handoff command
+     */
+    public LiteCommand getCommand() {
+        return m_command;
+    }
+
+    /**
+     * Gets the current state of the handoff.
+     *
+     * @return the handoff state
+     */
+    public State getState() {
+        return m_state;
+    }
+
+    private void start() {
+        stopAll();
+        m_pieceStage = -1;
+        m_state = State.INTAKING;
+        // Pre-stage the collector so it is at speed when the piece leaves the intake
+        setRunning(0, true);
+        setRunning(1, true);
+    }
+
+    private void update() {
+        for (int i = 0; i < m_stages.length; i++) {
+            var stage = m_stages[i];
+            if (!stage.running) {
+                continue;
+            }
+
+            // Read as primitives, so polling every stage every loop doesn't allocate
+            double current_A = stage.statorCurrent_A.getAsDouble();
+            double timestamp_s = stage.statorCurrentTimestamp_s.getAsDouble();
+            if (stage.runningSince_s == 0.0) {
+                stage.runningSince_s = timestamp_s;
+            }
+            if (timestamp_s - stage.runningSince_s < k_spinUpTime_s) {
+                stage.detector.reset();
+                continue;
+            }
+
+            var edge = stage.detector.update(current_A, timestamp_s);
+            if (edge == Edge.RISING) {
+                onPieceEntered(i);
+            } else if (edge == Edge.FALLING) {
+                onPieceLeft(i);
+            }
+        }
+
+        m_logState.accept(m_state.ordinal());
+        m_logPieceStage.accept(m_pieceStage);
+    }
+
+    private void onPieceEntered(int stageIndex) {
+        if (stageIndex <= m_pieceStage) {
+            return;
+        }
+
+        m_pieceStage = stageIndex;
+        if (stageIndex == m_stages.length - 1) {
+            m_state = State.HOLDING;
+            stopAll();
+            return;
+        }
+
+        m_state = State.HANDOFF;
+        // Spin up the next roller before the piece gets to it
+        setRunning(stageIndex + 1, true);
+    }
+
+    private void onPieceLeft(int stageIndex) {
+        if (stageIndex < m_pieceStage) {
+            setRunning(stageIndex, false);
+        }
+    }
+
+    private void setRunning(int stageIndex, boolean running) {
+        var stage = m_stages[stageIndex];
+        if (stage.running == running) {
+            return;
+        }
+
+        stage.running = running;
+        // Spin up is measured from the first sample received after starting
+        stage.runningSince_s = 0.0;
+        stage.detector.reset();
+        stage.setPower.accept(running ? k_feedVoltage : Voltage.ZERO);
+    }
+
+    private void stopAll() {
+        for (int i = 0; i < m_stages.length; i++) {
+            setRunning(i, false);
+        }
+    }
+}
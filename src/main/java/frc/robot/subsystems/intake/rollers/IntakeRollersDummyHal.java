@@ -1,5 +1,7 @@
 package frc.robot.subsystems.intake.rollers;
 
+import org.growingstems.measurements.Measurements.AngularVelocity;
+import org.growingstems.measurements.Measurements.Current;
 import org.growingstems.measurements.Measurements.Voltage;
 
 public class IntakeRollersDummyHal implements IntakeRollersHalI {
@@ -8,11 +10,21 @@ public class IntakeRollersDummyHal implements IntakeRollersHalI {
         // NOP
     }
 
+    @Override
+    public void setVelocity(AngularVelocity velocity) {
+        // NOP
+    }
+
     @Override
     public void setIntendedNeutralMode() {
         // NOP
     }
 
+    @Override
+    public void refreshSignals() {
+        // NOP
+    }
+
     @Override
     public void update() {
         // NOP
@@ -27,4 +39,19 @@ public class IntakeRollersDummyHal implements IntakeRollersHalI {
     public void coast() {
         // NOP
     }
+
+    @Override
+    public double getStatorCurrent_A() {
+        return 0.0;
+    }
+
+    @Override
+    public double getStatorCurrentTimestamp_s() {
+        return 0.0;
+    }
+
+    @Override
+    public Current getCompensatedStatorCurrent() {
+        return Current.ZERO;
+    }
 }
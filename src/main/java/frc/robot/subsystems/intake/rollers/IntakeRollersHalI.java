@@ -1,6 +1,8 @@
 package frc.robot.subsystems.intake.rollers;
 
 import frc.library.StartupNeutralMode;
+import org.growingstems.measurements.Measurements.AngularVelocity;
+import org.growingstems.measurements.Measurements.Current;
 import org.growingstems.measurements.Measurements.Voltage;
 
 public interface IntakeRollersHalI extends StartupNeutralMode {
@@ -10,5 +12,44 @@ public interface IntakeRollersHalI extends StartupNeutralMode {
 
     void setPower(Voltage power);
 
+    /**
+     * Runs the rollers at a velocity using the motor controller's onboard closed loop, which keeps
+     * the speed up as the battery sags. Only sends a new request when the setpoint changes.
+     *
+     * @param velocity The motor velocity
+     */
+    void setVelocity(AngularVelocity velocity);
+
+    /**
+     * Reads the latest status signals from the CAN bus in one batch, for the next {@link #update()}
+     * to sample. Runs in the parallel update stage alongside the other HALs, so it must not log or
+     * touch anything outside the HAL.
+     */
+    void refreshSignals();
+
     void update();
+
+    /**
+     * Gets the stator current read by the last {@link #update()}. Doesn't allocate, so it can be
+     * polled every loop.
+     *
+     * @return the latest stator current sample in amps
+     */
+    double getStatorCurrent_A();
+
+    /**
+     * Gets when the CAN frame of the stator current read by the last {@link #update()} was
+     * received.
+     *
+     * @return the timestamp of the latest stator current sample in seconds
+     */
+    double getStatorCurrentTimestamp_s();
+
+    /**
+     * Gets the stator current read by the last {@link #update()}, extrapolated forward by its CAN
+     * latency for use in control.
+     *
+     * @return the latency compensated stator current
+     */
+    Current getCompensatedStatorCurrent();
 }
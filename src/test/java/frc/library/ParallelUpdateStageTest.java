@@ -0,0 +1,113 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+/** Runs tasks through a {@link ParallelUpdateStage} and compares them against running serially. */
+class ParallelUpdateStageTest {
+    private static final int k_workerCount = 3;
+    private static final int k_runs = 20_000;
+
+    /** Values the tasks update in place, in an order dependent way wherever they conflict. */
+    private static class State {
+        long a = 1;
+        long b = 2;
+        long c = 3;
+        long d = 4;
+    }
+
+    private record TaskSpec(String name, long reads, long writes, Consumer<State> update) {}
+
+    private static TaskSpec[] makeTasks(ParallelUpdateStage stage) {
+        long a = stage.addResource("A");
+        long b = stage.addResource("B");
+        long c = stage.addResource("C");
+        long d = stage.addResource("D");
+        return new TaskSpec[] {
+            new TaskSpec("A1", 0, a, s -> s.a = s.a * 31 + 1),
+            new TaskSpec("B1", 0, b, s -> s.b = s.b * 31 + 2),
+            new TaskSpec("A2", 0, a, s -> s.a = s.a * 31 + 3),
+            new TaskSpec("D1", 0, d, s -> s.d = s.d * 31 + 4),
+            new TaskSpec("A to B", a, b, s -> s.b = s.b * 31 + s.a),
+            new TaskSpec("A and B to C", a | b, c, s -> s.c = s.c * 31 + s.a - s.b),
+            new TaskSpec("C to A", c, a, s -> s.a = s.a * 31 + s.c),
+            new TaskSpec("D2", 0, d, s -> s.d = s.d * 31 + 5),
+        };
+    }
+
+    @Test
+    void conflictingTasksMatchTheSerialOrder() {
+        var stage = new ParallelUpdateStage(k_workerCount);
+        var tasks = makeTasks(stage);
+        var parallel = new State();
+        for (var task : tasks) {
+            stage.addTask(
+                    task.name(), task.reads(), task.writes(), () -> task.update().accept(parallel));
+        }
+        // A1 B1 D1 | A2 D2 | A to B | A and B to C | C to A
+        assertEquals(5, stage.getWaveCount());
+
+        var serial = new State();
+        for (int run = 0; run < k_runs; run++) {
+            stage.run();
+            for (var task : tasks) {
+                task.update().accept(serial);
+            }
+
+            assertEquals(serial.a, parallel.a, "A differs on run " + run);
+            assertEquals(serial.b, parallel.b, "B differs on run " + run);
+            assertEquals(serial.c, parallel.c, "C differs on run " + run);
+            assertEquals(serial.d, parallel.d, "D differs on run " + run);
+        }
+    }
+
+    @Test
+    void independentTasksRunOncePerRun() {
+        var stage = new ParallelUpdateStage(k_workerCount);
+        int taskCount = 8;
+        var runCounts = new AtomicIntegerArray(taskCount);
+        long bus = stage.addResource("Bus");
+        for (int i = 0; i < taskCount; i++) {
+            int index = i;
+            // Reading a shared resource doesn't conflict
+            stage.addTask("Task " + i, bus, 0, () -> runCounts.incrementAndGet(index));
+        }
+        assertEquals(1, stage.getWaveCount());
+
+        for (int run = 1; run <= k_runs; run++) {
+            stage.run();
+            for (int i = 0; i < taskCount; i++) {
+                assertEquals(run, runCounts.get(i), "Task " + i + " on run " + run);
+            }
+        }
+    }
+
+    @Test
+    void taskFailuresAreRethrownOnceTheStageCompletes() {
+        var stage = new ParallelUpdateStage(k_workerCount);
+        var runCounts = new AtomicIntegerArray(2);
+        stage.addTask("Failing", 0, 0, () -> {
+            runCounts.incrementAndGet(0);
+            throw new IllegalStateException("Failed");
+        });
+        stage.addTask("Passing", 0, 0, () -> runCounts.incrementAndGet(1));
+
+        var failure = assertThrows(RuntimeException.class, stage::run);
+        assertEquals(IllegalStateException.class, failure.getCause().getClass());
+        assertEquals(1, runCounts.get(0));
+        assertEquals(1, runCounts.get(1));
+
+        // The stage keeps running after a failure, each run reports its own
+        assertThrows(RuntimeException.class, stage::run);
+        assertEquals(2, runCounts.get(0));
+        assertEquals(2, runCounts.get(1));
+    }
+}
@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Desktop client for {@link LogStreamServer}. Reads the frames being streamed and keeps track of
+ * the schemas and entries it has been sent. Kept with the tests, so it doesn't ship in the robot
+ * program.
+ *
+ * <p>Run {@link #main} with {@code <host> <port>} to watch a robot, printing the entries being
+ * streamed and the received throughput once a second. The stream itself is checked by {@link
+ * LogStreamServerTest}.
+ */
+public class LogStreamClient implements AutoCloseable {
+    private static final long k_reportPeriod_ms = 1000;
+
+    /** A record frame. The payload is only valid until the next frame is read. */
+    public static record Record(int entryId, long timestamp_us, ByteBuffer payload) {}
+
+    public static record Schema(int size, String typeName, String schema) {}
+
+    public static record Entry(int structId, String name) {}
+
+    private final Socket m_socket;
+    private final DataInputStream m_in;
+    private final Map<Integer, Schema> m_schemas = new HashMap<>();
+    private final Map<Integer, Entry> m_entries = new HashMap<>();
+    private byte[] m_payload = new byte[1 << 16];
+    private long m_bytes = 0;
+
+    public LogStreamClient(String host, int port) throws IOException {
+        m_socket = new Socket(host, port);
+        m_in = new DataInputStream(new BufferedInputStream(m_socket.getInputStream(), 1 << 16));
+    }
+
+    /**
+     * Reads frames until the next record frame. Schema and entry frames read on the way are kept.
+     *
+     * @return the record
+     * @throws IOException if the connection is closed or times out
+     */
+    public Record readRecord() throws IOException {
+        while (true) {
+            int length = m_in.readInt();
+            byte frameType = m_in.readByte();
+            m_bytes += Integer.BYTES + length;
+            switch (frameType) {
+                case LogStreamServer.k_schemaFrame -> {
+                    int id = m_in.readInt();
+                    int size = m_in.readInt();
+                    m_schemas.put(id, new Schema(size, m_in.readUTF(), m_in.readUTF()));
+                }
+                case LogStreamServer.k_entryFrame -> {
+                    int entryId = m_in.readInt();
+                    int structId = m_in.readInt();
+                    m_entries.put(entryId, new Entry(structId, m_in.readUTF()));
+                }
+                default -> {
+                    int entryId = m_in.readInt();
+                    long timestamp_us = m_in.readLong();
+                    int payloadLength = length - 1 - Integer.BYTES - Long.BYTES;
+                    if (m_payload.length < payloadLength) {
+                        m_payload = new byte[payloadLength];
+                    }
+                    m_in.readFully(m_payload, 0, payloadLength);
+                    return new Record(
+                            entryId, timestamp_us, ByteBuffer.wrap(m_payload, 0, payloadLength));
+                }
+            }
+        }
+    }
+
+    public Map<Integer, Schema> getSchemas() {
+        return m_schemas;
+    }
+
+    public Map<Integer, Entry> getEntries() {
+        return m_entries;
+    }
+
+    /**
+     * Gets the number of bytes received, including the frame headers.
+     *
+     * @return the received bytes
+     */
+    public long getReceivedBytes() {
+        return m_bytes;
+    }
+
+    /**
+     * Sets how long a read waits for the server before failing.
+     *
+     * @param timeout_ms The timeout, 0 waits forever
+     * @throws IOException if the socket is closed
+     */
+    public void setTimeout(int timeout_ms) throws IOException {
+        m_socket.setSoTimeout(timeout_ms);
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_socket.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: LogStreamClient <host> <port>");
+            return;
+        }
+
+        try (var client = new LogStreamClient(args[0], Integer.parseInt(args[1]))) {
+            long lastReport_ms = System.currentTimeMillis();
+            long lastBytes = 0;
+            long records = 0;
+            while (true) {
+                client.readRecord();
+                records++;
+
+                long now_ms = System.currentTimeMillis();
+                if (now_ms - lastReport_ms >= k_reportPeriod_ms) {
+                    double elapsed_s = (now_ms - lastReport_ms) / 1000.0;
+                    System.out.printf(
+                            "%.0f records/s, %.1f kB/s, %d entries%n",
+                            records / elapsed_s,
+                            (client.getReceivedBytes() - lastBytes) / 1024.0 / elapsed_s,
+                            client.getEntries().size());
+                    lastReport_ms = now_ms;
+                    lastBytes = client.getReceivedBytes();
+                    records = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+package frc.robot.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/** Streams records through a {@link LogStreamServer} on the loopback interface. */
+class LogStreamServerTest {
+    private static final int k_timeout_ms = 5000;
+
+    private static LogStruct<double[]> makeStruct(LogSchemaRegistry registry) {
+        var struct = LogStruct.<double[]>builder("Loopback")
+                .addDouble("a", v -> v[0])
+                .addDouble("b", v -> v[1])
+                .addInteger("c", v -> (int) v[2])
+                .decodeAs(double[].class, fields -> new double[] {
+                    (Double) fields[0], (Double) fields[1], (Integer) fields[2]
+                })
+                .build();
+        registry.register(struct);
+        return struct;
+    }
+
+    private static void awaitConnection(LogStreamServer server) throws InterruptedException {
+        long start_ms = System.currentTimeMillis();
+        while (!server.isConnected()) {
+            assertTrue(System.currentTimeMillis() - start_ms < k_timeout_ms, "Never connected");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void recordsArriveWithDefinitionsAndTimestamps() throws Exception {
+        var registry = new LogSchemaRegistry();
+        var struct = makeStruct(registry);
+        var timestamp_us = new AtomicLong(1_000_000);
+        var server = new LogStreamServer(registry, 0, 1 << 20, timestamp_us::incrementAndGet);
+        var entry = server.makeEntry("Loopback/Record", struct);
+
+        try (server;
+                var client = new LogStreamClient("localhost", server.getPort())) {
+            client.setTimeout(k_timeout_ms);
+            awaitConnection(server);
+
+            int count = 1000;
+            double[] value = new double[3];
+            for (int i = 0; i < count; i++) {
+                value[0] = i;
+                value[1] = -i;
+                value[2] = i % 100;
+                entry.accept(value);
+            }
+
+            for (int i = 0; i < count; i++) {
+                var record = client.readRecord();
+                assertEquals(0, record.entryId());
+                assertEquals(1_000_001 + i, record.timestamp_us());
+                double[] decoded = struct.decode(record.payload());
+                assertEquals(i, decoded[0]);
+                assertEquals(-i, decoded[1]);
+                assertEquals(i % 100, decoded[2]);
+            }
+            assertEquals(0, server.getDroppedFrameCount());
+
+            var schema = client.getSchemas().get(struct.getId());
+            assertEquals(struct.getTypeName(), schema.typeName());
+            assertEquals(struct.getSize(), schema.size());
+            assertEquals("Loopback/Record", client.getEntries().get(0).name());
+            assertEquals(struct.getId(), client.getEntries().get(0).structId());
+        }
+    }
+
+    @Test
+    void lateSchemasArriveBeforeTheirRecords() throws Exception {
+        var registry = new LogSchemaRegistry();
+        var struct = makeStruct(registry);
+        var server = new LogStreamServer(registry, 0, 1 << 20, () -> 0);
+        var entry = server.makeEntry("Loopback/Record", struct);
+
+        try (server;
+                var client = new LogStreamClient("localhost", server.getPort())) {
+            client.setTimeout(k_timeout_ms);
+            awaitConnection(server);
+            entry.accept(new double[] {1.0, -1.0, 1.0});
+            client.readRecord();
+            assertEquals(1, client.getSchemas().size());
+
+            // Registered after the client connected and the first records were streamed
+            var lateStruct = LogStruct.<Integer>builder("Late")
+                    .addInteger("value", v -> v)
+                    .decodeAs(Integer.class, fields -> (Integer) fields[0])
+                    .build();
+            registry.register(lateStruct);
+            var lateEntry = server.makeEntry("Loopback/Late", lateStruct);
+            lateEntry.accept(42);
+
+            var record = client.readRecord();
+            var lateDefinition = client.getEntries().get(record.entryId());
+            assertEquals("Loopback/Late", lateDefinition.name());
+            var schema = client.getSchemas().get(lateDefinition.structId());
+            assertEquals(lateStruct.getTypeName(), schema.typeName());
+            assertEquals(42, (int) lateStruct.decode(record.payload()));
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void pausedClientLosesWholeFramesOnly() throws Exception {
+        var registry = new LogSchemaRegistry();
+        var struct = makeStruct(registry);
+        var timestamp_us = new AtomicLong(0);
+        // A small ring buffer, so it fills while the client isn't reading
+        var server = new LogStreamServer(registry, 0, 1 << 14, timestamp_us::incrementAndGet);
+        var entry = server.makeEntry("Loopback/Record", struct);
+
+        try (server;
+                var client = new LogStreamClient("localhost", server.getPort())) {
+            client.setTimeout(k_timeout_ms);
+            awaitConnection(server);
+
+            // The client doesn't read anything until every record is logged. Far more is logged
+            // than the ring and socket buffers hold, so if logging ever waited on the client this
+            // would never finish.
+            int count = 200_000;
+            double[] value = new double[3];
+            for (int i = 0; i < count; i++) {
+                value[0] = i;
+                value[1] = -i;
+                value[2] = i % 100;
+                entry.accept(value);
+            }
+            long dropped = server.getDroppedFrameCount();
+            assertTrue(dropped > 0, "Nothing was dropped while the client was paused");
+
+            long received = 0;
+            double last = -1.0;
+            long lastTimestamp_us = 0;
+            while (received + dropped < count) {
+                var record = client.readRecord();
+                double[] decoded = struct.decode(record.payload());
+                // A torn frame would break the relationship between the fields or the order
+                assertTrue(decoded[0] > last);
+                assertEquals(-decoded[0], decoded[1]);
+                assertEquals(decoded[0] % 100, decoded[2]);
+                assertEquals(decoded[0] + 1, record.timestamp_us());
+                assertTrue(record.timestamp_us() > lastTimestamp_us);
+                last = decoded[0];
+                lastTimestamp_us = record.timestamp_us();
+                received++;
+            }
+
+            // Every record is either received whole or counted as dropped, none are lost
+            assertEquals(dropped, server.getDroppedFrameCount());
+            assertEquals(count, received + dropped);
+            assertTrue(received > 0);
+        }
+    }
+}